@@ -2,6 +2,8 @@ package com.hmdp.config;
 
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.SeckillLimitInterceptor;
+import com.hmdp.utils.TtlPolicy;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -14,6 +16,10 @@ public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private TtlPolicy ttlPolicy;
+    @Resource
+    private SeckillLimitInterceptor seckillLimitInterceptor;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -26,9 +32,12 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/upload/**",
                         "/blog/hot",
                         "/user/code",
-                        "/user/login"
+                        "/user/login",
+                        "/admin/cache/metrics"
                 ).order(1);
+        // 秒杀接口的限流，放在登录拦截器之后，按用户限流时需要用户信息
+        registry.addInterceptor(seckillLimitInterceptor).addPathPatterns("/voucher-order/seckill/**").order(2);
         // token刷新的拦截器,order是控制拦截器执行顺序
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate, ttlPolicy)).addPathPatterns("/**").order(0);
     }
 }
@@ -1,10 +1,15 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -27,4 +32,22 @@ public class RedisConfig {
 
         return template;
     }
+
+    /**
+     * 发布订阅的监听容器，各组件自行注册监听的频道
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+
+    /**
+     * 逻辑过期缓存的编解码器，binary 为紧凑二进制格式，json 为原有的JSON格式；两者都能读取JSON格式的旧数据
+     */
+    @Bean
+    public CacheCodec cacheCodec(@Value("${hmdp.cache.codec:binary}") String codec) {
+        return "json".equals(codec) ? new JsonCacheCodec() : new BinaryCacheCodec();
+    }
 }
@@ -1,8 +1,12 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.KeyedLock;
+import com.hmdp.utils.RedissonKeyedLock;
+import com.hmdp.utils.StripedKeyedLock;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -17,4 +21,14 @@ public class RedissonConfig {
         // 创建RedissonClient对象
         return  Redisson.create(config);
     }
+
+    /**
+     * 按key加锁的实现，striped 为单机的分段锁，redisson 为多实例共享的分布式锁
+     */
+    @Bean
+    public KeyedLock keyedLock(@Value("${hmdp.lock.mode:striped}") String mode,
+                               @Value("${hmdp.lock.stripes:1024}") int stripes,
+                               RedissonClient redissonClient) {
+        return "redisson".equals(mode) ? new RedissonKeyedLock(redissonClient) : new StripedKeyedLock(stripes);
+    }
 }
@@ -55,9 +55,14 @@ public class BlogController {
     }
 
     @GetMapping("/of/me")
-    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                              @RequestParam(value = "cursor", required = false) String cursor) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
+        // 传入游标时使用游标分页
+        if (cursor != null) {
+            return blogService.queryBlogOfUserCursor(user.getId(), cursor);
+        }
         // 根据用户查询
         Page<Blog> page = blogService.query()
                 .eq("user_id", user.getId()).page(new Page<>(current, MAX_PAGE_SIZE));
@@ -67,7 +72,11 @@ public class BlogController {
     }
 
     @GetMapping("/hot")
-    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                               @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            return blogService.queryHotBlogCursor(cursor);
+        }
         return blogService.queryHotBlog(current);
     }
 
@@ -97,10 +106,15 @@ public class BlogController {
      * 根据id查询博主的探店笔记
      * @param current
      * @param id
+     * @param cursor 游标，传入时使用游标分页，第一页传空字符串
      * @return
      */
     @GetMapping("/of/user")
-    public Result queryBlogByUserId(@RequestParam(value = "current", defaultValue = "1") Integer current, @RequestParam("id") Long id) {
+    public Result queryBlogByUserId(@RequestParam(value = "current", defaultValue = "1") Integer current, @RequestParam("id") Long id,
+                                    @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            return blogService.queryBlogOfUserCursor(id, cursor);
+        }
         LambdaQueryWrapper<Blog> queryWrapper = new LambdaQueryWrapper<>();
         queryWrapper.eq(Blog::getUserId, id);
         Page<Blog> pageInfo = new Page<>(current, MAX_PAGE_SIZE);
@@ -0,0 +1,94 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.CacheRebuildScheduler;
+import com.hmdp.utils.HotKeyCache;
+import com.hmdp.utils.MetricsRegistry;
+import com.hmdp.utils.TtlPolicy;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * 缓存运维接口
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private HotKeyCache hotKeyCache;
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+    @Resource
+    private TtlPolicy ttlPolicy;
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
+    /**
+     * 缓存失效的统计
+     * @return pending：等待重试的key数量，failed：累计删除失败次数，retried：累计重试成功数
+     */
+    @GetMapping("/invalidation")
+    public Result invalidation() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("pending", cacheInvalidator.pending());
+        stats.put("failed", cacheInvalidator.failed());
+        stats.put("retried", cacheInvalidator.retried());
+        return Result.ok(stats);
+    }
+
+    /**
+     * 当前的热点key
+     * @return 热点key及估算的QPS，按QPS从高到低
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyCache.hotKeys());
+    }
+
+    /**
+     * 缓存异步重建的统计
+     * @return 队列长度、执行中的任务数、成功/失败/拒绝次数、平均与最大耗时(毫秒)
+     */
+    @GetMapping("/rebuild")
+    public Result rebuild() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", (long) cacheRebuildScheduler.queueDepth());
+        stats.put("active", (long) cacheRebuildScheduler.active());
+        stats.put("completed", cacheRebuildScheduler.completed());
+        stats.put("failed", cacheRebuildScheduler.failed());
+        stats.put("rejected", cacheRebuildScheduler.rejected());
+        stats.put("averageMillis", cacheRebuildScheduler.averageMillis());
+        stats.put("maxMillis", cacheRebuildScheduler.maxMillis());
+        return Result.ok(stats);
+    }
+
+    /**
+     * 各缓存族写入的过期时间分布
+     * @return 缓存族 -> (分钟 -> 在该分钟过期的写入次数)
+     */
+    @GetMapping("/expiry")
+    public Result expiry() {
+        return Result.ok(ttlPolicy.expiryHistogram());
+    }
+
+    /**
+     * Prometheus格式的指标
+     * @return 各缓存族的命中、未命中、空值命中、锁竞争次数和重建耗时，以及其它组件注册的指标
+     */
+    @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String metrics() {
+        return metricsRegistry.scrape();
+    }
+}
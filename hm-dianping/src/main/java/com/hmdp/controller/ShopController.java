@@ -1,15 +1,15 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.ShopSuggester;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * <p>
@@ -25,6 +25,8 @@ public class ShopController {
 
     @Resource
     public IShopService shopService;
+    @Resource
+    private ShopSuggester shopSuggester;
 
     /**
      * 根据id查询商铺信息
@@ -36,6 +38,19 @@ public class ShopController {
         return shopService.queryById(id);
     }
 
+    /**
+     * 批量查询商铺信息
+     * @param ids 商铺id列表，逗号隔开
+     * @return 按ids顺序排列的商铺列表
+     */
+    @GetMapping("/batch")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        if (ids.size() > SystemConstants.MAX_BATCH_SIZE) {
+            return Result.fail("一次最多查询" + SystemConstants.MAX_BATCH_SIZE + "个商铺");
+        }
+        return Result.ok(shopService.queryByIds(ids));
+    }
+
     /**
      * 新增商铺信息
      * @param shop 商铺数据
@@ -43,10 +58,7 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -63,37 +75,51 @@ public class ShopController {
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
      * @param current 页码
+     * @param x 经度，可选
+     * @param y 纬度，可选
+     * @param cursor 游标，传入时使用游标分页，第一页传空字符串
      * @return 商铺列表
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        if (cursor != null && (x == null || y == null)) {
+            return shopService.queryShopByTypeCursor(typeId, cursor);
+        }
+        return shopService.queryShopByType(typeId, current, x, y);
     }
 
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
      * @param current 页码
+     * @param cursor 游标，传入时使用游标分页，第一页传空字符串
      * @return 商铺列表
      */
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        if (cursor != null) {
+            return shopService.queryShopByNameCursor(name, cursor);
+        }
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 商铺名称前缀联想
+     * @param prefix 名称前缀
+     * @return 热度最高的若干个商铺id和名称
+     */
+    @GetMapping("/suggest")
+    public Result suggest(@RequestParam(value = "prefix", required = false) String prefix) {
+        return Result.ok(shopSuggester.suggest(prefix));
     }
 }
@@ -30,7 +30,7 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
@@ -45,6 +45,16 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 修改秒杀券，秒杀时间修改后所有实例的秒杀券缓存随之失效
+     * @param voucher 优惠券信息，包含秒杀时间，不能修改店铺和库存
+     * @return 无
+     */
+    @PutMapping("seckill")
+    public Result updateSeckillVoucher(@RequestBody Voucher voucher) {
+        return voucherService.updateSeckillVoucher(voucher);
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
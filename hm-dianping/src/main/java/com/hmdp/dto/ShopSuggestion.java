@@ -0,0 +1,16 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 商铺名称联想结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopSuggestion {
+    private Long id;
+    private String name;
+}
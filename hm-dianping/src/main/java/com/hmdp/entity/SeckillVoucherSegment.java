@@ -0,0 +1,43 @@
+package com.hmdp.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 秒杀优惠券的分段库存，热点优惠券的库存拆分为多行，各行独立扣减
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("tb_seckill_voucher_segment")
+public class SeckillVoucherSegment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 关联的优惠券的id
+     */
+    private Long voucherId;
+
+    /**
+     * 分段编号，从0开始
+     */
+    private Integer segmentNo;
+
+    /**
+     * 本分段的库存
+     */
+    private Integer stock;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
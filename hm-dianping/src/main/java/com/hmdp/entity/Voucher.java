@@ -90,6 +90,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private LocalDateTime endTime;
 
+    /**
+     * 秒杀库存的分段数，大于1时库存拆分为多个分段独立扣减
+     */
+    @TableField(exist = false)
+    private Integer segments;
+
     /**
      * 创建时间
      */
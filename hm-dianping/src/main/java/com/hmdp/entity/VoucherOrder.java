@@ -1,6 +1,7 @@
 package com.hmdp.entity;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -42,6 +43,12 @@ public class VoucherOrder implements Serializable {
      */
     private Long voucherId;
 
+    /**
+     * 扣减库存的分段编号，库存未分段时为空或-1
+     */
+    @TableField(exist = false)
+    private Integer segment;
+
     /**
      * 支付方式 1：余额支付；2：支付宝；3：微信
      */
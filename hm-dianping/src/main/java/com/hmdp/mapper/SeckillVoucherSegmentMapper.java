@@ -0,0 +1,13 @@
+package com.hmdp.mapper;
+
+import com.hmdp.entity.SeckillVoucherSegment;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * <p>
+ * 秒杀优惠券分段库存 Mapper 接口
+ * </p>
+ */
+public interface SeckillVoucherSegmentMapper extends BaseMapper<SeckillVoucherSegment> {
+
+}
@@ -16,6 +16,21 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryHotBlog(Integer current);
 
+    /**
+     * 按点赞数游标分页查询热门笔记
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     * @return
+     */
+    Result queryHotBlogCursor(String cursor);
+
+    /**
+     * 游标分页查询用户的笔记，按id倒序
+     * @param userId
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     * @return
+     */
+    Result queryBlogOfUserCursor(Long userId, String cursor);
+
     Result queryBlogById(Integer id);
 
     Result likeBlog(Long id);
@@ -3,6 +3,8 @@ package com.hmdp.service;
 import com.hmdp.entity.SeckillVoucher;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务类
@@ -13,4 +15,37 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface ISeckillVoucherService extends IService<SeckillVoucher> {
 
+    /**
+     * 将秒杀库存和秒杀时间写入redis，库存已存在时不覆盖
+     * @param voucher
+     */
+    void saveStockRedis(SeckillVoucher voucher);
+
+    /**
+     * 批量写入秒杀库存和秒杀时间，分段只查询一次，通过pipeline写入redis，库存已存在时不覆盖
+     * @param vouchers
+     */
+    void saveStockRedis(List<SeckillVoucher> vouchers);
+
+    /**
+     * 把秒杀库存拆分为多个分段，各分段的库存相差不超过1
+     * @param voucher 已保存的秒杀券
+     * @param segments 分段数
+     */
+    void saveSegments(SeckillVoucher voucher, int segments);
+
+    /**
+     * 查询秒杀券的分段，填入分段数，分段时库存改为各分段之和
+     * @param voucher
+     */
+    void fillStock(SeckillVoucher voucher);
+
+    /**
+     * 在数据库中扣减一个库存，分段时从按用户选定的分段开始依次尝试
+     * @param voucherId
+     * @param segments 分段数，未分段时为0
+     * @param userId
+     * @return 库存不足时返回false
+     */
+    boolean deductStock(Long voucherId, int segments, Long userId);
 }
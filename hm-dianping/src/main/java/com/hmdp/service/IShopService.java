@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -21,7 +23,56 @@ public interface IShopService extends IService<Shop> {
      */
     Result queryById(Long id);
 
+    /**
+     * 批量查询商铺信息，按ids的顺序返回，不存在的id会被跳过
+     * @param ids
+     * @return
+     */
+    List<Shop> queryByIds(List<Long> ids);
+
+    /**
+     * 根据商铺类型分页查询商铺信息，传入坐标时按距离由近到远排序
+     * @param typeId
+     * @param current
+     * @param x
+     * @param y
+     * @return
+     */
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    /**
+     * 根据商铺类型游标分页查询商铺信息
+     * @param typeId
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     * @return
+     */
+    Result queryShopByTypeCursor(Integer typeId, String cursor);
+
+    /**
+     * 根据商铺名称关键字分页查询商铺信息
+     * @param name
+     * @param current
+     * @return
+     */
+    Result queryShopByName(String name, Integer current);
+
+    /**
+     * 根据商铺名称关键字游标分页查询商铺信息
+     * @param name
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     * @return
+     */
+    Result queryShopByNameCursor(String name, String cursor);
+
+    /**
+     * 将商铺坐标批量写入按类型划分的GEO集合
+     * @param shops
+     */
+    void saveShopGeo(List<Shop> shops);
+
     void saveShopRedis(Long id, Long expireSeconds);
 
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
 }
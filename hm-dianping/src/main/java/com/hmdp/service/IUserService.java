@@ -23,4 +23,11 @@ public interface IUserService extends IService<User> {
     Result login(LoginFormDTO loginForm, HttpSession session);
 
     Result logout(HttpServletRequest request);
+
+    /**
+     * 根据id查询用户的公开信息
+     * @param id
+     * @return
+     */
+    Result queryById(Long id);
 }
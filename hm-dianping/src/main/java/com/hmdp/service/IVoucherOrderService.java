@@ -17,4 +17,12 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
     Result seckillVoucher(Long voucherId);
 
     Result createVoucherOrder(Long voucherId);
+
+    /**
+     * 查询秒杀订单的写入状态：PENDING 等待写入，CREATED 已创建，FAILED 写入失败(秒杀资格已归还)
+     *
+     * @param orderId 秒杀返回的订单id
+     * @return
+     */
+    Result queryOrderStatus(Long orderId);
 }
@@ -5,6 +5,7 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
@@ -15,7 +16,12 @@ import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.HotKeyCache;
+import com.hmdp.utils.IdBloomFilter;
+import com.hmdp.utils.PageCursor;
 import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.TtlPolicy;
 import com.hmdp.utils.UserHolder;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
@@ -26,9 +32,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -49,6 +55,14 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private BlogMapper blogMapper;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private IdBloomFilter idBloomFilter;
+    @Resource
+    private HotKeyCache hotKeyCache;
+    @Resource
+    private TtlPolicy ttlPolicy;
 
     /**
      * 查询首页热门笔记，返回封面信息
@@ -72,6 +86,63 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(records);
     }
 
+    /**
+     * 按点赞数游标分页查询热门笔记，排序条件 (liked, id) 倒序
+     *
+     * @param cursor
+     * @return
+     */
+    @Override
+    public Result queryHotBlogCursor(String cursor) {
+        if (!PageCursor.isValid(cursor, PageCursor.Kind.LIKED)) {
+            return Result.fail("无效的分页游标");
+        }
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.LIKED);
+        List<Blog> records = query()
+                .and(after != null, w -> w.lt("liked", after.getSortKey())
+                        .or(o -> o.eq("liked", after.getSortKey()).lt("id", after.getId())))
+                .orderByDesc("liked", "id")
+                .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        records.forEach(blog -> {
+            queryBlogUser(blog);
+            isBlogLiked(blog);
+        });
+        String next = null;
+        if (records.size() == SystemConstants.MAX_PAGE_SIZE) {
+            Blog last = records.get(records.size() - 1);
+            next = new PageCursor(PageCursor.Kind.LIKED, last.getLiked() == null ? 0 : last.getLiked(), last.getId()).encode();
+        }
+        return Result.ok(new CursorResult(records, next));
+    }
+
+    /**
+     * 游标分页查询用户的笔记，按id倒序
+     *
+     * @param userId
+     * @param cursor
+     * @return
+     */
+    @Override
+    public Result queryBlogOfUserCursor(Long userId, String cursor) {
+        if (!PageCursor.isValid(cursor, PageCursor.Kind.ID)) {
+            return Result.fail("无效的分页游标");
+        }
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.ID);
+        List<Blog> records = query()
+                .eq("user_id", userId)
+                .lt(after != null, "id", after == null ? null : after.getId())
+                .orderByDesc("id")
+                .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        String next = null;
+        if (records.size() == SystemConstants.MAX_PAGE_SIZE) {
+            Long lastId = records.get(records.size() - 1).getId();
+            next = new PageCursor(PageCursor.Kind.ID, lastId, lastId).encode();
+        }
+        return Result.ok(new CursorResult(records, next));
+    }
+
     /**
      * 根据id查询笔记信息，返回笔记信息和个人信息
      *
@@ -80,10 +151,26 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      */
     @Override
     public Result queryBlogById(Integer id) {
-        Blog blog = getById(id);
-        if (blog == null) {
+        if (id == null) {
             return Result.fail("笔记不存在");
         }
+        String key = CACHE_BLOG_KEY + id;
+        // 热点笔记读本地缓存，点赞数最多滞后本地缓存的存活时间
+        Blog cached = hotKeyCache.get(key);
+        if (cached == null) {
+            // 本地缓存未命中，布隆过滤器判断一定不存在的id
+            if (!idBloomFilter.mightContain(IdBloomFilter.BLOG, id.longValue())) {
+                return Result.fail("笔记不存在");
+            }
+            cached = cacheClient.queryWithPassThrough(
+                    CACHE_BLOG_KEY, id, Blog.class, this::getById, ttlPolicy.minutes(TtlPolicy.Family.BLOG), TimeUnit.MINUTES);
+            if (cached == null) {
+                return Result.fail("笔记不存在");
+            }
+            hotKeyCache.put(key, cached);
+        }
+        // 下面会填充作者和当前用户的点赞状态，不能修改缓存中的对象
+        Blog blog = BeanUtil.copyProperties(cached, Blog.class);
         queryBlogUser(blog);
         isBlogLiked(blog);
         return Result.ok(blog);
@@ -127,6 +214,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 stringRedisTemplate.opsForZSet().remove(key, userId.toString());
             }
         }
+        //点赞数变化，删除笔记缓存
+        stringRedisTemplate.delete(CACHE_BLOG_KEY + id);
         return Result.ok();
     }
 
@@ -184,6 +273,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         blog.setUserId(user.getId());
         // 保存探店博文
         blogService.save(blog);
+        idBloomFilter.add(IdBloomFilter.BLOG, blog.getId());
+        stringRedisTemplate.delete(CACHE_BLOG_KEY + blog.getId());
         // 从follow表最中，查找当前用户的粉丝  select * from follow where follow_user_id = user_id
         List<Follow> follows = blogMapper.getFollowsByUserId(user.getId());
         //获取当前用户的粉丝
@@ -1,11 +1,27 @@
 package com.hmdp.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.SeckillVoucherSegment;
 import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.SeckillVoucherSegmentMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.SeckillStockLayout;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务实现类
@@ -17,4 +33,97 @@ import org.springframework.stereotype.Service;
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillVoucherSegmentMapper seckillVoucherSegmentMapper;
+
+    @Override
+    public void saveStockRedis(SeckillVoucher voucher) {
+        saveStockRedis(Collections.singletonList(voucher));
+    }
+
+    @Override
+    public void saveStockRedis(List<SeckillVoucher> vouchers) {
+        if (vouchers.isEmpty()) {
+            return;
+        }
+        // 一次查出这批秒杀券的全部分段
+        List<Long> ids = vouchers.stream().map(SeckillVoucher::getVoucherId).collect(Collectors.toList());
+        Map<Long, List<SeckillVoucherSegment>> segments = seckillVoucherSegmentMapper.selectList(
+                new QueryWrapper<SeckillVoucherSegment>().in("voucher_id", ids).orderByAsc("segment_no"))
+                .stream().collect(Collectors.groupingBy(SeckillVoucherSegment::getVoucherId));
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (SeckillVoucher voucher : vouchers) {
+                    String key = SECKILL_STOCK_KEY + voucher.getVoucherId();
+                    List<SeckillVoucherSegment> list = segments.getOrDefault(voucher.getVoucherId(), Collections.emptyList());
+                    // 库存只在不存在时写入，避免覆盖正在扣减的库存
+                    SeckillStockLayout.stockFields(voucher, list)
+                            .forEach((field, value) -> operations.opsForHash().putIfAbsent(key, field, value));
+                    if (!list.isEmpty()) {
+                        // 分段的秒杀券不应有未分段的库存字段
+                        operations.opsForHash().delete(key, SECKILL_STOCK_FIELD);
+                    }
+                    operations.opsForHash().putAll(key, SeckillStockLayout.metaFields(voucher, list.size()));
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void saveSegments(SeckillVoucher voucher, int segments) {
+        int stock = voucher.getStock();
+        for (int i = 0; i < segments; i++) {
+            // 余数分给前面的分段
+            SeckillVoucherSegment segment = new SeckillVoucherSegment()
+                    .setVoucherId(voucher.getVoucherId())
+                    .setSegmentNo(i)
+                    .setStock(stock / segments + (i < stock % segments ? 1 : 0));
+            seckillVoucherSegmentMapper.insert(segment);
+        }
+    }
+
+    @Override
+    public void fillStock(SeckillVoucher voucher) {
+        List<SeckillVoucherSegment> segments = querySegments(voucher.getVoucherId());
+        voucher.setSegments(segments.size());
+        if (!segments.isEmpty()) {
+            voucher.setStock(segments.stream().mapToInt(SeckillVoucherSegment::getStock).sum());
+        }
+    }
+
+    @Override
+    public boolean deductStock(Long voucherId, int segments, Long userId) {
+        if (segments <= 0) {
+            return update()
+                    .setSql("stock = stock - 1")
+                    .eq("voucher_id", voucherId)
+                    .gt("stock", 0)
+                    .update();
+        }
+        // 从用户对应的分段开始，分段库存不足时依次尝试其它分段
+        int start = (Long.hashCode(userId) & Integer.MAX_VALUE) % segments;
+        for (int i = 0; i < segments; i++) {
+            int segmentNo = (start + i) % segments;
+            int updated = seckillVoucherSegmentMapper.update(null, new UpdateWrapper<SeckillVoucherSegment>()
+                    .setSql("stock = stock - 1")
+                    .eq("voucher_id", voucherId)
+                    .eq("segment_no", segmentNo)
+                    .gt("stock", 0));
+            if (updated > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<SeckillVoucherSegment> querySegments(Long voucherId) {
+        return seckillVoucherSegmentMapper.selectList(new QueryWrapper<SeckillVoucherSegment>()
+                .eq("voucher_id", voucherId)
+                .orderByAsc("segment_no"));
+    }
 }
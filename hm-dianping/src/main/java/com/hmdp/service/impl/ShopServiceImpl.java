@@ -1,24 +1,48 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.HotKeyCache;
+import com.hmdp.utils.IdBloomFilter;
+import com.hmdp.utils.NearCache;
+import com.hmdp.utils.PageCursor;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.TtlPolicy;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -36,8 +60,20 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
-
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private NearCache nearCache;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private HotKeyCache hotKeyCache;
+    @Resource
+    private IdBloomFilter idBloomFilter;
+    @Resource
+    private ShopNameIndex shopNameIndex;
+    @Resource
+    private TtlPolicy ttlPolicy;
 
     /**
      * 根据id查询商铺信息
@@ -47,162 +83,244 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      */
     @Override
     public Result queryById(Long id) {
+        String key = CACHE_SHOP_KEY + id;
+        // 热点商铺直接读本地缓存，同时记录访问频率
+        Shop hot = hotKeyCache.get(key);
+        if (hot != null) {
+            return Result.ok(hot);
+        }
+        // 再查一级缓存
+        Shop cached = nearCache.get(key);
+        if (cached != null) {
+            hotKeyCache.put(key, cached);
+            return Result.ok(cached);
+        }
+        // 本地缓存未命中，布隆过滤器判断一定不存在的id
+        if (!idBloomFilter.mightContain(IdBloomFilter.SHOP, id)) {
+            return Result.fail("店铺不存在！");
+        }
         //缓存穿透
-//        Shop shop = queryWithPassThrough(id);
+//        Shop shop = cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         //互斥锁解决缓存击穿
-//        Shop shop = queryWithMutex(id);
+//        Shop shop = cacheClient.queryWithMutex(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         //利用逻辑过期解决缓存击穿
-        Shop shop = queryWithLogicalExpire(id);
+        Shop shop = cacheClient.queryWithLogicalExpire(
+                CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, ttlPolicy.minutes(TtlPolicy.Family.SHOP), TimeUnit.MINUTES);
+        if (shop == null) {
+            return Result.fail("店铺不存在！");
+        }
+        nearCache.put(key, shop);
+        hotKeyCache.put(key, shop);
         return Result.ok(shop);
     }
 
     /**
-     * 利用逻辑过期解决缓存击穿
+     * 批量查询商铺信息，依次经过本地缓存、布隆过滤器、redis，最后一次性查询数据库
      *
-     * @param id
+     * @param ids
      * @return
      */
-    public Shop queryWithLogicalExpire(Long id) {
-        //从redis查询数据
-        String key = CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 判断缓存是否存在
-        if (StrUtil.isBlank(shopJson)) {
-            // 不存在，直接返回
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        // 命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        //获取redisData的data
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        //获取redisData的过期时间
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            return shop;
-        }
-        // 已过期，需要缓存重建
-        // 获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-
-        boolean isLock = tryLock(lockKey);
-        // 判断是否获取锁成功
-        if (isLock){
-            CACHE_REBUILD_EXECUTOR.submit( ()->{
-                try{
-                    //重建缓存
-                    this.saveShopRedis(id,10L);
-                }catch (Exception e){
-                    throw new RuntimeException(e);
-                }finally {
-                    unLock(lockKey);
-                }
-            });
+    @Override
+    public List<Shop> queryByIds(List<Long> ids) {
+        Map<Long, Shop> found = new HashMap<>(ids.size() * 4 / 3 + 1);
+        List<Long> misses = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Shop cached = nearCache.get(CACHE_SHOP_KEY + id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+        // 只对本地缓存未命中的id查询布隆过滤器，一次往返
+        misses = idBloomFilter.mightContainAll(IdBloomFilter.SHOP, misses);
+        List<Shop> loaded = cacheClient.queryWithLogicalExpireBatch(CACHE_SHOP_KEY, LOCK_SHOP_KEY, misses, Shop.class,
+                this::listByIds, Shop::getId, ttlPolicy.minutes(TtlPolicy.Family.SHOP), TimeUnit.MINUTES);
+        for (Shop shop : loaded) {
+            nearCache.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            found.put(shop.getId(), shop);
         }
-        // 6.4.返回过期的商铺信息
-        return shop;
+        List<Shop> shops = new ArrayList<>(found.size());
+        for (Long id : ids) {
+            Shop shop = found.get(id);
+            if (shop != null) {
+                shops.add(shop);
+            }
+        }
+        return shops;
     }
 
     /**
-     * 互斥锁解决缓存击穿
+     * 根据商铺类型分页查询商铺信息
      *
-     * @param id
+     * @param typeId
+     * @param current
+     * @param x
+     * @param y
      * @return
      */
-    public Shop queryWithMutex(Long id) {
-        //从redis查询数据
-        String key = CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 判断缓存是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 存在，直接返回
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        // 判断命中的是否是空值
-        if ("".equals(shopJson)) {
-            // 返回一个错误信息
-            return null;
-        }
-        //获取互斥锁
-        String lockKey = "lock:shop:" + id;
-        Shop shop = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            if (!isLock) {
-                // 失败，则休眠重试
-                Thread.sleep(10);
-                return queryWithMutex(id);
-            }
-            // 缓存不存在，根据id查询数据库
-            shop = getById(id);
-            // 数据库不存在，返回错误
-            if (shop == null) {
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-            // 数据库存在，写入redis
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            unLock(lockKey);
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        // 不需要按坐标查询，按数据库分页查询id
+        if (x == null || y == null) {
+            Page<Shop> page = query()
+                    .select("id")
+                    .eq("type_id", typeId)
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+            List<Long> ids = page.getRecords().stream().map(Shop::getId).collect(Collectors.toList());
+            return Result.ok(queryByIds(ids));
+        }
+        // 计算分页参数
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        // 查询redis，按距离排序、分页，结果：shopId、distance
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(
+                SHOP_GEO_KEY + typeId,
+                new Circle(new Point(x, y), new Distance(SystemConstants.SHOP_GEO_RADIUS_METERS)),
+                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(end));
+        if (results == null) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
+        if (list.size() <= from) {
+            // 没有下一页了
+            return Result.ok(Collections.emptyList());
         }
-        return shop;
+        // 截取 from ~ end 的部分
+        List<Long> ids = new ArrayList<>(list.size() - from);
+        Map<Long, Double> distanceMap = new HashMap<>(list.size() * 4 / 3 + 1);
+        list.stream().skip(from).forEach(result -> {
+            Long shopId = Long.valueOf(result.getContent().getName());
+            ids.add(shopId);
+            distanceMap.put(shopId, result.getDistance().getValue());
+        });
+        // 通过缓存批量查询商铺，复制后填充距离，避免修改缓存中的对象
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Shop shop : queryByIds(ids)) {
+            Shop copy = BeanUtil.copyProperties(shop, Shop.class);
+            copy.setDistance(distanceMap.get(shop.getId()));
+            shops.add(copy);
+        }
+        return Result.ok(shops);
     }
 
     /**
-     * 缓存null值解决缓存穿透
+     * 根据商铺类型游标分页查询商铺信息
      *
-     * @param id
+     * @param typeId
+     * @param cursor
      * @return
      */
-    public Shop queryWithPassThrough(Long id) {
-        //从redis查询数据
-        String key = CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 判断缓存是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 存在，直接返回
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        // 判断命中的是否是空值
-        if ("".equals(shopJson)) {
-            // 返回一个错误信息
-            return null;
-        }
+    @Override
+    public Result queryShopByTypeCursor(Integer typeId, String cursor) {
+        return queryShopAfter(query().eq("type_id", typeId), cursor, SystemConstants.DEFAULT_PAGE_SIZE);
+    }
 
-        // 缓存不存在，根据id查询数据库
-        Shop shop = getById(id);
-        // 数据库不存在，返回错误
-        if (shop == null) {
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
+    /**
+     * 根据商铺名称关键字分页查询商铺信息，关键字通过名称索引匹配，索引未构建完成时退回数据库模糊查询
+     *
+     * @param name
+     * @param current
+     * @return
+     */
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        // 页码从1开始，非法的页码当作第一页
+        current = current == null || current < 1 ? 1 : current;
+        if (StrUtil.isBlank(name) || !shopNameIndex.isReady()) {
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        long offset = (long) (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        if (offset > Integer.MAX_VALUE) {
+            return Result.ok(Collections.emptyList());
         }
-        // 数据库存在，写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        return shop;
+        List<Long> ids = shopNameIndex.search(name, (int) offset, SystemConstants.MAX_PAGE_SIZE);
+        return Result.ok(queryByIds(ids));
     }
 
     /**
-     * 设置锁
+     * 根据商铺名称关键字游标分页查询商铺信息
+     * <p>
+     * 名称索引的结果按匹配程度排序，不是按id排序，游标中记录下一页在结果中的位置
      *
-     * @param key
+     * @param name
+     * @param cursor
      * @return
      */
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
+    @Override
+    public Result queryShopByNameCursor(String name, String cursor) {
+        if (StrUtil.isBlank(name) || !shopNameIndex.isReady()) {
+            return queryShopAfter(query().like(StrUtil.isNotBlank(name), "name", name), cursor, SystemConstants.MAX_PAGE_SIZE);
+        }
+        // 索引的游标记录结果中的位置，解析时已校验在int范围内，不能与按id翻页的游标混用
+        if (!PageCursor.isValid(cursor, PageCursor.Kind.OFFSET)) {
+            return Result.fail("无效的分页游标");
+        }
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.OFFSET);
+        int offset = after == null ? 0 : (int) after.getSortKey();
+        List<Long> ids = shopNameIndex.search(name, offset, SystemConstants.MAX_PAGE_SIZE);
+        String next = null;
+        if (ids.size() == SystemConstants.MAX_PAGE_SIZE) {
+            next = new PageCursor(PageCursor.Kind.OFFSET, offset + ids.size(), ids.get(ids.size() - 1)).encode();
+        }
+        return Result.ok(new CursorResult(queryByIds(ids), next));
+    }
 
-        return Boolean.TRUE.equals(flag);
+    /**
+     * 按id升序查询游标之后的一页id，再通过缓存批量查询商铺
+     */
+    private Result queryShopAfter(QueryChainWrapper<Shop> wrapper, String cursor, int size) {
+        if (!PageCursor.isValid(cursor, PageCursor.Kind.ID)) {
+            return Result.fail("无效的分页游标");
+        }
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.ID);
+        List<Long> ids = wrapper.select("id")
+                .gt(after != null, "id", after == null ? null : after.getId())
+                .orderByAsc("id")
+                .last("limit " + size)
+                .list()
+                .stream().map(Shop::getId).collect(Collectors.toList());
+        // 不足一页说明没有下一页了
+        String next = null;
+        if (ids.size() == size) {
+            Long lastId = ids.get(ids.size() - 1);
+            next = new PageCursor(PageCursor.Kind.ID, lastId, lastId).encode();
+        }
+        return Result.ok(new CursorResult(queryByIds(ids), next));
     }
 
     /**
-     * 删除锁
+     * 将商铺坐标批量写入按类型划分的GEO集合
      *
-     * @param key
+     * @param shops
      */
-    private void unLock(String key) {
-        stringRedisTemplate.delete(key);
+    @Override
+    public void saveShopGeo(List<Shop> shops) {
+        // 按照typeId分组
+        Map<Long, List<Shop>> byType = shops.stream()
+                .filter(shop -> shop.getTypeId() != null && shop.getX() != null && shop.getY() != null)
+                .collect(Collectors.groupingBy(Shop::getTypeId));
+        if (byType.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                byType.forEach((typeId, value) -> {
+                    List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(value.size());
+                    for (Shop shop : value) {
+                        locations.add(new RedisGeoCommands.GeoLocation<>(
+                                shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+                    }
+                    operations.opsForGeo().add(SHOP_GEO_KEY + typeId, locations);
+                });
+                return null;
+            }
+        });
     }
 
     /**
@@ -213,13 +331,30 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      */
     @Override
     public void saveShopRedis(Long id, Long expireSeconds) {
+        long begin = System.currentTimeMillis();
         Shop shop = getById(id);
-        RedisData redisData = new RedisData();
-        //封装数据
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //写入redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS,
+                System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 新增商铺信息
+     *
+     * @param shop
+     * @return
+     */
+    @Override
+    public Result saveShop(Shop shop) {
+        // 写入数据库
+        save(shop);
+        // 写入布隆过滤器和名称索引
+        idBloomFilter.add(IdBloomFilter.SHOP, shop.getId());
+        shopNameIndex.index(shop);
+        // 写入GEO集合
+        saveShopGeo(Collections.singletonList(shop));
+        // 清除该id可能存在的空值缓存
+        cacheInvalidator.invalidate(CACHE_SHOP_KEY + shop.getId());
+        return Result.ok(shop.getId());
     }
 
     /**
@@ -235,10 +370,30 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (id == null) {
             return Result.fail("商铺id不能为空");
         }
+        // 先记录旧的类型，位置或类型变化时需要同步GEO集合
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("商铺不存在");
+        }
+        boolean geoChanged = shop.getTypeId() != null || shop.getX() != null || shop.getY() != null;
         //更新数据库
         updateById(shop);
-        //删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        Shop current = getById(id);
+        // 事务提交后再更新名称索引和GEO集合，回滚时不会留下脏数据；先于下面的缓存失效注册，也先执行
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                shopNameIndex.index(current);
+                if (geoChanged) {
+                    if (old.getTypeId() != null && !old.getTypeId().equals(current.getTypeId())) {
+                        stringRedisTemplate.opsForZSet().remove(SHOP_GEO_KEY + old.getTypeId(), id.toString());
+                    }
+                    saveShopGeo(Collections.singletonList(current));
+                }
+            }
+        });
+        //事务提交后删除缓存并通知所有实例清除本地缓存，延迟后再删除一次
+        cacheInvalidator.invalidate(CACHE_SHOP_KEY + id);
         return Result.ok();
     }
 }
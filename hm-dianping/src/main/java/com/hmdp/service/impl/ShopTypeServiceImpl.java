@@ -4,8 +4,9 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.TtlPolicy;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -14,7 +15,7 @@ import javax.annotation.Resource;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
 
 /**
  * <p>
@@ -25,13 +26,16 @@ import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
  * @since 2021-12-22
  */
 @Service
-@Slf4j
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
     @Resource
     private RedisTemplate redisTemplate;
     @Resource
     private IShopTypeService typeService;
+    @Resource
+    private TtlPolicy ttlPolicy;
+    @Resource
+    private CacheMetrics cacheMetrics;
 
     /**
      * 商铺分类缓存
@@ -39,17 +43,32 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
      */
     @Override
     public Result queryTypeList() {
-        List<ShopType> typeList = (List<ShopType>) redisTemplate.opsForValue().get("typeList");
+        List<ShopType> typeList = (List<ShopType>) redisTemplate.opsForValue().get(CACHE_SHOP_TYPE_KEY);
 
         if (typeList != null) {
-            log.info("商铺分类已缓存,不写入数据");
+            cacheMetrics.hit(CACHE_SHOP_TYPE_KEY);
             return Result.ok(typeList);
         }
-        typeList = typeService.query().orderByAsc("sort").list();
-        // 将查询结果写入Redis缓存
-        log.info("已将商铺分类写入Redis缓存");
-        redisTemplate.opsForValue().set("typeList", typeList,CACHE_SHOP_TTL, TimeUnit.MINUTES);
-
+        cacheMetrics.miss(CACHE_SHOP_TYPE_KEY);
+        long begin = System.currentTimeMillis();
+        typeList = loadTypeList();
+        cacheMetrics.rebuild(CACHE_SHOP_TYPE_KEY, System.currentTimeMillis() - begin);
         return Result.ok(typeList);
     }
+
+    /**
+     * 查询商铺分类并写入缓存
+     */
+    @Override
+    public void saveTypeListRedis() {
+        loadTypeList();
+    }
+
+    private List<ShopType> loadTypeList() {
+        List<ShopType> typeList = typeService.query().orderByAsc("sort").list();
+        // 将查询结果写入Redis缓存
+        redisTemplate.opsForValue().set(CACHE_SHOP_TYPE_KEY, typeList,
+                ttlPolicy.ttlSeconds(TtlPolicy.Family.SHOP_TYPE), TimeUnit.SECONDS);
+        return typeList;
+    }
 }
@@ -12,7 +12,10 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.IdBloomFilter;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.TtlPolicy;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -27,7 +30,6 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 
 /**
@@ -46,6 +48,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     private IUserService userService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private IdBloomFilter idBloomFilter;
+    @Resource
+    private TtlPolicy ttlPolicy;
     /**
      * 验证码发送并存到redis
      * @param phone
@@ -100,7 +108,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         String tokenKey = LOGIN_USER_KEY + token;
         stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
         // 7.4.设置token有效期
-        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        stringRedisTemplate.expire(tokenKey, ttlPolicy.ttlSeconds(TtlPolicy.Family.LOGIN_USER), TimeUnit.SECONDS);
 
         // 8.返回token
         return Result.ok(token);
@@ -113,6 +121,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok("账号已退出");
     }
 
+    @Override
+    public Result queryById(Long id) {
+        if (!idBloomFilter.mightContain(IdBloomFilter.USER, id)) {
+            return Result.ok();
+        }
+        UserDTO userDTO = cacheClient.queryWithPassThrough(CACHE_USER_KEY, id, UserDTO.class,
+                userId -> {
+                    User user = getById(userId);
+                    return user == null ? null : BeanUtil.copyProperties(user, UserDTO.class);
+                }, ttlPolicy.minutes(TtlPolicy.Family.USER), TimeUnit.MINUTES);
+        return Result.ok(userDTO);
+    }
+
     private User createUserWithPhone(String phone) {
         // 1.创建用户
         User user = new User();
@@ -120,6 +141,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         user.setNickName(USER_NICK_NAME_PREFIX + RandomUtil.randomString(10));
         // 2.保存用户
         userService.save(user);
+        idBloomFilter.add(IdBloomFilter.USER, user.getId());
+        // 清除该id可能存在的空值缓存
+        stringRedisTemplate.delete(CACHE_USER_KEY + user.getId());
         log.info("已注册user:{}",user.getPhone());
         return user;
     }
@@ -8,14 +8,37 @@ import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.LockTemplate;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillSoldOutFlags;
+import com.hmdp.utils.SeckillVoucherCache;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.VoucherOrderStreamConsumer;
+import com.hmdp.utils.VoucherOrderWriter;
 import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_ADMITTED_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_ADMITTED_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_FAILED_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SEGMENT_STOCK_FIELD;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_FIELD;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_USERS_SUFFIX;
 
 /**
  * <p>
@@ -32,36 +55,218 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private ISeckillVoucherService seckillVoucherService;
     @Resource
     private RedisIdWorker redisIdWorker;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private VoucherOrderWriter voucherOrderWriter;
+    @Resource
+    private VoucherOrderStreamConsumer voucherOrderStreamConsumer;
+    @Resource
+    private SeckillSoldOutFlags seckillSoldOutFlags;
+    @Resource
+    private LockTemplate lockTemplate;
+    @Resource
+    private SeckillVoucherCache seckillVoucherCache;
+
+    /**
+     * 是否在redis中判断秒杀资格，关闭时每次请求都查询数据库
+     */
+    @Value("${hmdp.seckill.redis-admission:true}")
+    private boolean redisAdmission;
+    /**
+     * 订单stream的大致长度上限，同时作为订单流水保留
+     */
+    @Value("${hmdp.seckill.stream.max-length:1000000}")
+    private long streamMaxLength;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> SECKILL_ROLLBACK_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(List.class);
+        SECKILL_ROLLBACK_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_ROLLBACK_SCRIPT.setLocation(new ClassPathResource("seckill_rollback.lua"));
+        SECKILL_ROLLBACK_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 秒杀脚本返回的结果，另一个返回值为扣减库存的分段
+     */
+    private static final int ADMITTED = 0;
+    private static final int NOT_FOUND = 1;
+    private static final int NOT_STARTED = 2;
+    private static final int ENDED = 3;
+    private static final int SOLD_OUT = 4;
+    private static final int DUPLICATE = 5;
+
+    /**
+     * 秒杀订单的写入状态
+     */
+    private static final String ORDER_PENDING = "PENDING";
+    private static final String ORDER_CREATED = "CREATED";
+    private static final String ORDER_FAILED = "FAILED";
+
+    @PostConstruct
+    private void init() {
+        // 订单最终写入失败时归还秒杀资格
+        voucherOrderWriter.onFailure(order ->
+                rollbackAdmission(order.getVoucherId(), order.getUserId(), order.getSegment()));
+        // 用户已有订单时重复的订单被忽略，只归还其扣减的库存，用户仍保留在已下单集合中
+        voucherOrderWriter.onDuplicate(this::releaseStock);
+    }
 
     @Override
     public Result seckillVoucher(Long voucherId) {
-        // 查询优惠券
-//        LambdaQueryWrapper<SeckillVoucher> wrapper = new LambdaQueryWrapper<>();
-//        wrapper.eq(SeckillVoucher::getVoucherId,voucherId);
-//        SeckillVoucher seckillVoucher = seckillVoucherService.getOne(wrapper);
-
-        // 查询优惠券
-        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
-        //判断秒杀是否开始
-        if (LocalDateTime.now().isBefore(voucher.getBeginTime())) {
+        // 已售罄的优惠券直接在本地拒绝
+        if (seckillSoldOutFlags.isSoldOut(voucherId)) {
+            return Result.fail("优惠券已被抢光了哦，下次记得手速快点");
+        }
+        // 秒杀券信息和时间窗口在本地判断
+        SeckillVoucher voucher = seckillVoucherCache.get(voucherId);
+        if (voucher == null) {
+            return Result.fail("秒杀券不存在！");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(voucher.getBeginTime())) {
             return Result.fail("秒杀尚未开始！");
         }
-        //判断秒杀是否结束
-        if (LocalDateTime.now().isAfter(voucher.getEndTime())) {
+        if (now.isAfter(voucher.getEndTime())) {
             return Result.fail("秒杀已经结束！");
         }
-        //判断是否还有库存
+        if (!redisAdmission) {
+            return seckillVoucherWithDb(voucher);
+        }
+        Long userId = UserHolder.getUser().getId();
+        long orderId = redisIdWorker.nextId("order");
+        // 执行lua脚本，原子地判断时间、库存、一人一单，并扣减库存、记录用户
+        long[] admission = admit(voucherId, userId, orderId);
+        if (admission[0] == NOT_FOUND) {
+            // 秒杀库存尚未写入redis，写入后再判断一次
+            seckillVoucherService.saveStockRedis(voucher);
+            admission = admit(voucherId, userId, orderId);
+        }
+        switch ((int) admission[0]) {
+            case ADMITTED:
+                break;
+            case NOT_STARTED:
+                return Result.fail("秒杀尚未开始！");
+            case ENDED:
+                return Result.fail("秒杀已经结束！");
+            case SOLD_OUT:
+                seckillSoldOutFlags.markSoldOut(voucherId);
+                return Result.fail("优惠券已被抢光了哦，下次记得手速快点");
+            case DUPLICATE:
+                return Result.fail("已经抢过优惠券了哦");
+            default:
+                return Result.fail("秒杀券不存在！");
+        }
+        if (voucherOrderStreamConsumer.isEnabled()) {
+            // 订单已经由脚本写入stream，等待消费者写入数据库
+            return Result.ok(orderId);
+        }
+        // 获得资格，交给进程内队列异步写入，一人一单和库存已由redis保证
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(orderId);
+        voucherOrder.setUserId(userId);
+        voucherOrder.setVoucherId(voucherId);
+        voucherOrder.setSegment((int) admission[1]);
+        if (!voucherOrderWriter.submit(voucherOrder)) {
+            // 写入队列已满，归还资格，让用户稍后重试
+            rollbackAdmission(voucherId, userId, voucherOrder.getSegment());
+            return Result.fail("系统繁忙，请稍后重试");
+        }
+        return Result.ok(voucherOrder.getId());
+    }
+
+    /**
+     * 执行秒杀脚本
+     *
+     * @return {结果, 扣减库存的分段}
+     */
+    private long[] admit(Long voucherId, Long userId, long orderId) {
+        List<String> keys = voucherOrderStreamConsumer.isEnabled()
+                ? Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_STOCK_KEY + voucherId + SECKILL_USERS_SUFFIX,
+                SECKILL_ORDER_ADMITTED_KEY + orderId, SECKILL_ORDER_STREAM_KEY)
+                : Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_STOCK_KEY + voucherId + SECKILL_USERS_SUFFIX,
+                SECKILL_ORDER_ADMITTED_KEY + orderId);
+        List<?> result = stringRedisTemplate.execute(SECKILL_SCRIPT, keys,
+                userId.toString(), String.valueOf(System.currentTimeMillis()),
+                voucherId.toString(), String.valueOf(orderId), String.valueOf(streamMaxLength),
+                String.valueOf(Long.hashCode(userId) & Integer.MAX_VALUE),
+                String.valueOf(TimeUnit.HOURS.toSeconds(SECKILL_ORDER_ADMITTED_TTL)));
+        if (result == null || result.size() < 2) {
+            return new long[]{NOT_FOUND, -1};
+        }
+        return new long[]{((Number) result.get(0)).longValue(), ((Number) result.get(1)).longValue()};
+    }
+
+    /**
+     * 下单失败时归还redis中的库存和下单资格
+     */
+    private void rollbackAdmission(Long voucherId, Long userId, Integer segment) {
+        List<String> keys = Arrays.asList(
+                SECKILL_STOCK_KEY + voucherId, SECKILL_STOCK_KEY + voucherId + SECKILL_USERS_SUFFIX);
+        Long restored = stringRedisTemplate.execute(SECKILL_ROLLBACK_SCRIPT, keys,
+                userId.toString(), String.valueOf(segment == null ? -1 : segment));
+        if (restored != null && restored == 1L) {
+            // 库存加回，取消各实例的售罄标记
+            seckillSoldOutFlags.markAvailable(voucherId);
+        }
+    }
+
+    /**
+     * 归还重复订单在redis中扣减的库存
+     */
+    private void releaseStock(VoucherOrder order) {
+        Integer segment = order.getSegment();
+        String field = segment == null || segment < 0 ? SECKILL_STOCK_FIELD : SECKILL_SEGMENT_STOCK_FIELD + segment;
+        stringRedisTemplate.opsForHash().increment(SECKILL_STOCK_KEY + order.getVoucherId(), field, 1);
+        seckillSoldOutFlags.markAvailable(order.getVoucherId());
+    }
+
+    @Override
+    public Result queryOrderStatus(Long orderId) {
+        Long userId = UserHolder.getUser().getId();
+        VoucherOrder order = getById(orderId);
+        if (order != null) {
+            return userId.equals(order.getUserId()) ? Result.ok(ORDER_CREATED) : Result.fail("订单不存在");
+        }
+        // 写入失败的订单记录了下单用户
+        String failedUser = stringRedisTemplate.opsForValue().get(SECKILL_ORDER_FAILED_KEY + orderId);
+        if (failedUser != null) {
+            return userId.toString().equals(failedUser) ? Result.ok(ORDER_FAILED) : Result.fail("订单不存在");
+        }
+        // 秒杀脚本记录了获得资格的订单，还在等待写入；其它id(伪造或已过期)当作不存在
+        String admittedUser = stringRedisTemplate.opsForValue().get(SECKILL_ORDER_ADMITTED_KEY + orderId);
+        if (userId.toString().equals(admittedUser)) {
+            return Result.ok(ORDER_PENDING);
+        }
+        return Result.fail("订单不存在");
+    }
+
+    /**
+     * 查询数据库判断秒杀资格
+     *
+     * @param voucher 本地缓存的秒杀券，时间窗口已经判断过
+     */
+    private Result seckillVoucherWithDb(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        //判断是否还有库存，快照可能滞后，扣减时还会再判断
         if (voucher.getStock() < 1) {
+            seckillSoldOutFlags.markSoldOut(voucherId);
             return Result.fail("优惠券已被抢光了哦，下次记得手速快点");
         }
         //获得原始的事务对象，来操作事务；
         // AopContext.currentProxy()
         Long userId = UserHolder.getUser().getId();
-        synchronized (userId.toString().intern()) {
-            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-            return proxy.createVoucherOrder(voucherId);
-        }
-
+        // 按用户加锁保证一人一单，锁在事务提交之后才释放
+        IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
+        return lockTemplate.executeWithLock(LOCK_ORDER_KEY + userId,
+                () -> proxy.createVoucherOrder(voucherId),
+                () -> Result.fail("不允许重复下单"));
     }
 
     /**
@@ -83,14 +288,13 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             return Result.fail("已经抢过优惠券了哦");
         }
 
-        //扣减库存
-        boolean success = seckillVoucherService.update()
-                .setSql("stock = stock - 1") // set stock = stock - 1
-                .eq("voucher_id", voucherId)// where id = ? and stock > 0
-                .gt("stock", 0)//库存大于0,乐观锁
-                .update();
+        //扣减库存，库存大于0时才扣减(乐观锁)，分段时扣减其中一个分段，分段数取自本地缓存
+        SeckillVoucher voucher = seckillVoucherCache.get(voucherId);
+        int segments = voucher == null || voucher.getSegments() == null ? 0 : voucher.getSegments();
+        boolean success = seckillVoucherService.deductStock(voucherId, segments, userId);
         if (!success) {
-            // 扣减失败
+            // 扣减失败，库存(或所有分段)已经用完，标记售罄，之后的请求不必再加锁、开事务
+            seckillSoldOutFlags.markSoldOut(voucherId);
             return Result.fail("库存不足！");
         }
         //创建订单
@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.lang.TypeReference;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
@@ -7,11 +8,23 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.SeckillVoucherCache;
+import com.hmdp.utils.TtlPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_VOUCHER_KEY;
 
 /**
  * <p>
@@ -26,15 +39,43 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillVoucherCache seckillVoucherCache;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private TtlPolicy ttlPolicy;
+
+    /**
+     * 未指定分段数时秒杀库存的分段数，1表示不分段
+     */
+    @Value("${hmdp.seckill.stock-segments:1}")
+    private int defaultSegments;
+
+    private static final int MAX_SEGMENTS = 64;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        List<Voucher> vouchers = cacheClient.queryWithPassThrough(
+                CACHE_SHOP_VOUCHER_KEY, shopId, new TypeReference<List<Voucher>>() {},
+                getBaseMapper()::queryVoucherOfShop, ttlPolicy.minutes(TtlPolicy.Family.SHOP_VOUCHER), TimeUnit.MINUTES);
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    @Override
+    public void addVoucher(Voucher voucher) {
+        // 保存优惠券
+        save(voucher);
+        // 删除店铺优惠券列表缓存
+        stringRedisTemplate.delete(CACHE_SHOP_VOUCHER_KEY + voucher.getShopId());
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -47,5 +88,64 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 热点优惠券的库存拆分为多个分段，分散数据库的行锁
+        int segments = voucher.getSegments() != null ? voucher.getSegments() : defaultSegments;
+        if (segments > 1) {
+            segments = Math.min(segments, MAX_SEGMENTS);
+            seckillVoucherService.saveSegments(seckillVoucher, segments);
+        }
+        seckillVoucher.setSegments(segments > 1 ? segments : 0);
+        // 提交后再写入秒杀库存，秒杀资格在redis中判断；回滚时不能留下不存在的秒杀券的库存
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                seckillVoucherService.saveStockRedis(seckillVoucher);
+            }
+        });
+        // 通知所有实例清除可能缓存的空值，首次秒杀时加载到本地缓存
+        seckillVoucherCache.invalidate(seckillVoucher.getVoucherId());
+        // 删除店铺优惠券列表缓存
+        cacheInvalidator.invalidate(CACHE_SHOP_VOUCHER_KEY + voucher.getShopId());
+    }
+
+    @Override
+    @Transactional
+    public Result updateSeckillVoucher(Voucher voucher) {
+        Long id = voucher.getId();
+        if (id == null) {
+            return Result.fail("优惠券id不能为空");
+        }
+        Voucher old = getById(id);
+        SeckillVoucher seckillVoucher = seckillVoucherService.getById(id);
+        if (old == null || seckillVoucher == null) {
+            return Result.fail("秒杀券不存在");
+        }
+        // 店铺、类型和库存不允许修改，库存已经写入redis并可能拆分为多个分段
+        voucher.setShopId(null);
+        voucher.setType(null);
+        voucher.setUpdateTime(LocalDateTime.now());
+        updateById(voucher);
+        if (voucher.getBeginTime() != null) {
+            seckillVoucher.setBeginTime(voucher.getBeginTime());
+        }
+        if (voucher.getEndTime() != null) {
+            seckillVoucher.setEndTime(voucher.getEndTime());
+        }
+        seckillVoucherService.update()
+                .set("begin_time", seckillVoucher.getBeginTime())
+                .set("end_time", seckillVoucher.getEndTime())
+                .eq("voucher_id", id)
+                .update();
+        // 提交后再更新redis中的秒杀时间，回滚时不影响正在进行的秒杀
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                seckillVoucherService.saveStockRedis(seckillVoucher);
+            }
+        });
+        // 各实例的秒杀券本地缓存和店铺优惠券列表缓存
+        seckillVoucherCache.invalidate(id);
+        cacheInvalidator.invalidate(CACHE_SHOP_VOUCHER_KEY + old.getShopId());
+        return Result.ok();
     }
 }
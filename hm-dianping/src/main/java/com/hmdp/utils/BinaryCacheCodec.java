@@ -0,0 +1,331 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制编解码，省去JSON的字段名和两次解析
+ * <p>
+ * 格式：魔数(1) 格式版本(1) 实体结构哈希(4) 逻辑过期时间 重建耗时 字段存在位图 各字段的值，整数使用zigzag变长编码。
+ * 实体字段发生变化时结构哈希不一致，旧数据解码返回null，由调用方当作未命中重建。
+ * 只支持字段均为基本类型、String、LocalDateTime的实体，其余类型以及旧的JSON数据交给JSON编解码处理
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte MAGIC = (byte) 0xCB;
+    private static final byte FORMAT_VERSION = 1;
+
+    private final CacheCodec fallback = new JsonCacheCodec();
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] encode(RedisData redisData) {
+        Object data = redisData.getData();
+        Schema schema = data == null ? null : schemaOf(data.getClass());
+        if (schema == null || !schema.supported) {
+            return fallback.encode(redisData);
+        }
+        Writer out = new Writer(64 + schema.fields.length * 8);
+        out.writeByte(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(schema.hash);
+        out.writeDateTime(redisData.getExpireTime());
+        out.writeVarLong(redisData.getRebuildMillis() == null ? 0L : redisData.getRebuildMillis());
+        try {
+            Object[] values = new Object[schema.fields.length];
+            byte[] presence = new byte[(values.length + 7) >>> 3];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = schema.fields[i].get(data);
+                if (values[i] != null) {
+                    presence[i >>> 3] |= 1 << (i & 7);
+                }
+            }
+            out.writeBytes(presence);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    writeValue(out, schema.kinds[i], values[i]);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public RedisData decode(byte[] bytes, Type type) {
+        if (bytes.length == 0 || bytes[0] != MAGIC) {
+            return fallback.decode(bytes, type);
+        }
+        if (!(type instanceof Class)) {
+            return null;
+        }
+        Reader in = new Reader(bytes, 1);
+        Schema schema = schemaOf((Class<?>) type);
+        try {
+            if (in.readByte() != FORMAT_VERSION || !schema.supported || in.readInt() != schema.hash) {
+                return null;
+            }
+            RedisData redisData = new RedisData();
+            redisData.setExpireTime(in.readDateTime());
+            redisData.setRebuildMillis(in.readVarLong());
+            Object data = schema.constructor.newInstance();
+            byte[] presence = in.readBytes((schema.fields.length + 7) >>> 3);
+            for (int i = 0; i < schema.fields.length; i++) {
+                if ((presence[i >>> 3] & (1 << (i & 7))) != 0) {
+                    schema.fields[i].set(data, readValue(in, schema.kinds[i]));
+                }
+            }
+            redisData.setData(data);
+            return redisData;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        } catch (RuntimeException e) {
+            // 数据被截断或损坏(越界、负的长度等)，当作未命中
+            return null;
+        }
+    }
+
+    private Schema schemaOf(Class<?> clazz) {
+        return schemas.computeIfAbsent(clazz, Schema::new);
+    }
+
+    private static void writeValue(Writer out, Kind kind, Object value) {
+        switch (kind) {
+            case LONG:
+                out.writeVarLong((Long) value);
+                break;
+            case INT:
+                out.writeVarLong((Integer) value);
+                break;
+            case DOUBLE:
+                out.writeLong(Double.doubleToLongBits((Double) value));
+                break;
+            case BOOLEAN:
+                out.writeByte((Boolean) value ? (byte) 1 : (byte) 0);
+                break;
+            case STRING:
+                byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(utf8.length);
+                out.writeBytes(utf8);
+                break;
+            default:
+                out.writeDateTime((LocalDateTime) value);
+        }
+    }
+
+    private static Object readValue(Reader in, Kind kind) {
+        switch (kind) {
+            case LONG:
+                return in.readVarLong();
+            case INT:
+                return (int) in.readVarLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case STRING:
+                int length = (int) in.readVarLong();
+                return new String(in.readBytes(length), StandardCharsets.UTF_8);
+            default:
+                return in.readDateTime();
+        }
+    }
+
+    private enum Kind {
+        LONG, INT, DOUBLE, BOOLEAN, STRING, DATE_TIME;
+
+        static Kind of(Class<?> type) {
+            if (type == Long.class || type == long.class) {
+                return LONG;
+            }
+            if (type == Integer.class || type == int.class) {
+                return INT;
+            }
+            if (type == Double.class || type == double.class) {
+                return DOUBLE;
+            }
+            if (type == Boolean.class || type == boolean.class) {
+                return BOOLEAN;
+            }
+            if (type == String.class) {
+                return STRING;
+            }
+            if (type == LocalDateTime.class) {
+                return DATE_TIME;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 实体结构：按字段名排序的字段列表及其哈希
+     */
+    private static class Schema {
+        private final Field[] fields;
+        private final Kind[] kinds;
+        private final int hash;
+        private final boolean supported;
+        private final Constructor<?> constructor;
+
+        Schema(Class<?> clazz) {
+            List<Field> list = new ArrayList<>();
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        list.add(field);
+                    }
+                }
+            }
+            list.sort(Comparator.comparing(Field::getName));
+            fields = list.toArray(new Field[0]);
+            kinds = new Kind[fields.length];
+            StringBuilder signature = new StringBuilder(clazz.getName());
+            boolean allSupported = true;
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].setAccessible(true);
+                kinds[i] = Kind.of(fields[i].getType());
+                allSupported &= kinds[i] != null;
+                signature.append(';').append(fields[i].getName()).append(':').append(kinds[i]);
+            }
+            hash = signature.toString().hashCode();
+            Constructor<?> ctor = null;
+            try {
+                ctor = clazz.getDeclaredConstructor();
+                ctor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                allSupported = false;
+            }
+            constructor = ctor;
+            supported = allSupported;
+        }
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        void writeByte(byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            long zigzag = (v << 1) ^ (v >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[pos++] = (byte) zigzag;
+        }
+
+        void writeDateTime(LocalDateTime time) {
+            writeVarLong(time.toEpochSecond(ZoneOffset.UTC));
+            writeVarLong(time.getNano());
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        byte[] readBytes(int n) {
+            if (n < 0 || n > buf.length - pos) {
+                // copyOfRange越界时会补0，截断的数据必须在这里发现
+                throw new IndexOutOfBoundsException("length " + n + " at " + pos + " of " + buf.length);
+            }
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + n);
+            pos += n;
+            return bytes;
+        }
+
+        int readInt() {
+            int v = 0;
+            for (int i = 0; i < 4; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        LocalDateTime readDateTime() {
+            long seconds = readVarLong();
+            return LocalDateTime.ofEpochSecond(seconds, (int) readVarLong(), ZoneOffset.UTC);
+        }
+    }
+}
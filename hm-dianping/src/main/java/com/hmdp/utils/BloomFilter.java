@@ -0,0 +1,81 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * id的布隆过滤器，判断不存在时一定不存在，判断存在时有一定误判率
+ */
+public interface BloomFilter {
+
+    boolean mightContain(long id);
+
+    /**
+     * 批量判断
+     *
+     * @param ids
+     * @return 可能存在的id，保持原有顺序
+     */
+    default List<Long> mightContainAll(Collection<Long> ids) {
+        List<Long> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (mightContain(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    void add(long id);
+
+    void addAll(Collection<Long> ids);
+
+    /**
+     * 计算布隆过滤器的位数组长度
+     *
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                期望误判率
+     * @return
+     */
+    static long optimalNumOfBits(long expectedInsertions, double fpp) {
+        return (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+    }
+
+    /**
+     * 计算哈希函数个数
+     *
+     * @param expectedInsertions 预计元素个数
+     * @param numBits            位数组长度
+     * @return
+     */
+    static int optimalNumOfHashFunctions(long expectedInsertions, long numBits) {
+        return Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * 双重哈希计算id在位数组中的所有下标
+     *
+     * @param id
+     * @param numHashFunctions
+     * @param numBits
+     * @return
+     */
+    static long[] indexes(long id, int numHashFunctions, long numBits) {
+        long hash1 = mix64(id);
+        long hash2 = mix64(hash1 ^ 0x9E3779B97F4A7C15L);
+        long[] indexes = new long[numHashFunctions];
+        long combined = hash1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            indexes[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash2;
+        }
+        return indexes;
+    }
+
+    static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
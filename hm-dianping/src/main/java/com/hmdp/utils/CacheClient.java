@@ -0,0 +1,462 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 通用缓存工具，封装缓存空值、互斥锁重建、逻辑过期重建三种策略
+ * <p>
+ * type 可以传实体的 Class，也可以传 hutool 的 TypeReference 来缓存 List 等泛型结构
+ */
+@Slf4j
+@Component
+public class CacheClient {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheCodec cacheCodec;
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+    @Resource
+    private TtlPolicy ttlPolicy;
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    /**
+     * 是否开启逻辑过期的概率提前刷新
+     */
+    @Value("${hmdp.cache.early-refresh.enabled:false}")
+    private boolean earlyRefreshEnabled;
+    /**
+     * 提前刷新的激进程度，越大越早刷新
+     */
+    @Value("${hmdp.cache.early-refresh.beta:1.0}")
+    private double earlyRefreshBeta;
+
+    /**
+     * 其它实例持有锁时，重新读取缓存的次数与间隔
+     */
+    private static final int LOCK_RETRY_TIMES = 50;
+    private static final long LOCK_RETRY_INTERVAL_MILLIS = 20L;
+
+    /**
+     * 同一个key的并发未命中只由一个线程加载
+     */
+    private final SingleFlight singleFlight = new SingleFlight(TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL));
+
+    /**
+     * 写入缓存并设置TTL
+     *
+     * @param key
+     * @param value
+     * @param time
+     * @param unit
+     */
+    public void set(String key, Object value, Long time, TimeUnit unit) {
+        stringRedisTemplate.opsForValue().set(
+                key, JSONUtil.toJsonStr(value), ttlPolicy.ttlSeconds(key, time, unit), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 写入缓存并设置逻辑过期时间，key本身不设置TTL
+     *
+     * @param key
+     * @param value
+     * @param time
+     * @param unit
+     */
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        setWithLogicalExpire(key, value, time, unit, 0L);
+    }
+
+    /**
+     * 写入缓存并设置逻辑过期时间，同时记录本次重建耗时，供提前刷新使用
+     *
+     * @param key
+     * @param value
+     * @param time
+     * @param unit
+     * @param rebuildMillis 本次查询数据库的耗时
+     */
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, long rebuildMillis) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(ttlPolicy.ttlSeconds(key, time, unit)));
+        redisData.setRebuildMillis(rebuildMillis);
+        byte[] bytes = cacheCodec.encode(redisData);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey(key), bytes));
+    }
+
+    /**
+     * 批量写入逻辑过期缓存，通过pipeline一次往返完成
+     *
+     * @param values     key与数据
+     * @param time
+     * @param unit
+     * @param batchMillis 查询这一批数据的耗时，按条数平摊后作为每个key的重建耗时，提前刷新依赖它
+     */
+    public void setWithLogicalExpireBatch(Map<String, ?> values, Long time, TimeUnit unit, long batchMillis) {
+        if (values.isEmpty()) {
+            return;
+        }
+        long rebuildMillis = Math.max(1, batchMillis / values.size());
+        LocalDateTime now = LocalDateTime.now();
+        Map<byte[], byte[]> encoded = new HashMap<>(values.size() * 4 / 3 + 1);
+        values.forEach((key, value) -> {
+            RedisData redisData = new RedisData();
+            redisData.setData(value);
+            // 每个key单独计算过期时间，同一批写入的key不会同时过期
+            redisData.setExpireTime(now.plusSeconds(ttlPolicy.ttlSeconds(key, time, unit)));
+            redisData.setRebuildMillis(rebuildMillis);
+            encoded.put(rawKey(key), cacheCodec.encode(redisData));
+        });
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            encoded.forEach(connection::set);
+            return null;
+        });
+    }
+
+    /**
+     * 缓存null值解决缓存穿透
+     *
+     * @param keyPrefix  key前缀
+     * @param id         id
+     * @param type       返回值类型
+     * @param dbFallback 缓存未命中时查询数据库的函数
+     * @param time       TTL
+     * @param unit       TTL单位
+     * @return 数据不存在时返回null
+     */
+    public <R, ID> R queryWithPassThrough(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 从redis查询缓存
+        String json = stringRedisTemplate.opsForValue().get(key);
+        // 命中，直接返回
+        if (StrUtil.isNotBlank(json)) {
+            cacheMetrics.hit(keyPrefix);
+            return toBean(json, type);
+        }
+        // 命中的是空值
+        if (json != null) {
+            cacheMetrics.nullHit(keyPrefix);
+            return null;
+        }
+        cacheMetrics.miss(keyPrefix);
+        // 未命中，合并同一个key的并发请求后查询数据库
+        return singleFlight.execute(key, () -> {
+            long begin = System.currentTimeMillis();
+            R r = dbFallback.apply(id);
+            // 数据库不存在，写入空值
+            if (r == null) {
+                stringRedisTemplate.opsForValue().set(key, "", ttlPolicy.nullTtlSeconds(), TimeUnit.SECONDS);
+            } else {
+                // 存在，写入redis
+                this.set(key, r, time, unit);
+            }
+            cacheMetrics.rebuild(keyPrefix, System.currentTimeMillis() - begin);
+            return r;
+        });
+    }
+
+    /**
+     * 互斥锁解决缓存击穿
+     *
+     * @param keyPrefix  key前缀
+     * @param lockPrefix 锁前缀
+     * @param id         id
+     * @param type       返回值类型
+     * @param dbFallback 缓存未命中时查询数据库的函数
+     * @param time       TTL
+     * @param unit       TTL单位
+     * @return 数据不存在时返回null
+     */
+    public <R, ID> R queryWithMutex(
+            String keyPrefix, String lockPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 从redis查询缓存
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isNotBlank(json)) {
+            cacheMetrics.hit(keyPrefix);
+            return toBean(json, type);
+        }
+        if (json != null) {
+            cacheMetrics.nullHit(keyPrefix);
+            return null;
+        }
+        cacheMetrics.miss(keyPrefix);
+        // 未命中，本实例内只有一个线程去竞争redis锁并加载，其余线程等待它的结果
+        return singleFlight.execute(key, () -> loadWithMutex(keyPrefix, lockPrefix + id, id, type, dbFallback, time, unit));
+    }
+
+    /**
+     * 获取redis互斥锁后查询数据库并写入缓存；锁被其它实例持有时，循环等待其写入的缓存
+     */
+    private <R, ID> R loadWithMutex(
+            String keyPrefix, String lockKey, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        for (int i = 0; i < LOCK_RETRY_TIMES; i++) {
+            if (tryLock(lockKey)) {
+                try {
+                    // 获取锁成功后再次检查缓存，可能已被其它实例重建
+                    String json = stringRedisTemplate.opsForValue().get(key);
+                    if (json != null) {
+                        return StrUtil.isNotBlank(json) ? toBean(json, type) : null;
+                    }
+                    long begin = System.currentTimeMillis();
+                    R r = dbFallback.apply(id);
+                    if (r == null) {
+                        stringRedisTemplate.opsForValue().set(key, "", ttlPolicy.nullTtlSeconds(), TimeUnit.SECONDS);
+                    } else {
+                        this.set(key, r, time, unit);
+                    }
+                    cacheMetrics.rebuild(keyPrefix, System.currentTimeMillis() - begin);
+                    return r;
+                } finally {
+                    unLock(lockKey);
+                }
+            }
+            cacheMetrics.lockContention(keyPrefix);
+            // 其它实例正在重建，稍后读取它写入的缓存
+            sleep(LOCK_RETRY_INTERVAL_MILLIS);
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (json != null) {
+                return StrUtil.isNotBlank(json) ? toBean(json, type) : null;
+            }
+        }
+        // 等待超时，直接查询数据库，不写缓存
+        return dbFallback.apply(id);
+    }
+
+    /**
+     * 利用逻辑过期解决缓存击穿，缓存应提前预热，未预热的key在首次访问时加载
+     *
+     * @param keyPrefix  key前缀
+     * @param lockPrefix 锁前缀
+     * @param id         id
+     * @param type       返回值类型
+     * @param dbFallback 重建缓存时查询数据库的函数
+     * @param time       逻辑过期时间
+     * @param unit       时间单位
+     * @return 数据不存在时返回null
+     */
+    public <R, ID> R queryWithLogicalExpire(
+            String keyPrefix, String lockPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+        // 命中的是空值
+        if (bytes != null && bytes.length == 0) {
+            cacheMetrics.nullHit(keyPrefix);
+            return null;
+        }
+        // 命中，反序列化；实体结构变化导致无法解码时按未命中处理
+        RedisData redisData = bytes == null ? null : cacheCodec.decode(bytes, type);
+        // 未命中，说明未预热或已被删除，合并并发请求后查询数据库并写入
+        if (redisData == null) {
+            cacheMetrics.miss(keyPrefix);
+            return singleFlight.execute(key, () -> rebuild(keyPrefix, id, dbFallback, time, unit));
+        }
+        cacheMetrics.hit(keyPrefix);
+        @SuppressWarnings("unchecked")
+        R r = (R) redisData.getData();
+        // 未过期且不需要提前刷新，直接返回
+        if (!needRebuild(redisData)) {
+            return r;
+        }
+        // 已过期或命中提前刷新，开启独立线程重建
+        rebuildAsync(keyPrefix, lockPrefix + id, id, dbFallback, time, unit);
+        // 返回旧数据
+        return r;
+    }
+
+    /**
+     * 批量查询逻辑过期缓存：一次MGET读取所有key，未命中的id一次性查询数据库，再通过pipeline回填
+     *
+     * @param keyPrefix     key前缀
+     * @param lockPrefix    锁前缀
+     * @param ids           id列表
+     * @param type          数据类型
+     * @param batchFallback 根据一批id查询数据库的函数
+     * @param idGetter      获取数据id的函数
+     * @param time          逻辑过期时间
+     * @param unit          时间单位
+     * @return 按ids顺序排列的数据，不存在的id会被跳过
+     */
+    public <R, ID> List<R> queryWithLogicalExpireBatch(
+            String keyPrefix, String lockPrefix, List<ID> ids, Class<R> type,
+            Function<Collection<ID>, List<R>> batchFallback, Function<R, ID> idGetter, Long time, TimeUnit unit) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        byte[][] keys = new byte[ids.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rawKey(keyPrefix + ids.get(i));
+        }
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+        Map<ID, R> found = new HashMap<>(ids.size() * 4 / 3 + 1);
+        List<ID> misses = new ArrayList<>();
+        Function<ID, R> dbFallback = id -> {
+            List<R> list = batchFallback.apply(Collections.singletonList(id));
+            return list.isEmpty() ? null : list.get(0);
+        };
+        for (int i = 0; i < keys.length; i++) {
+            ID id = ids.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            // 命中的是空值
+            if (bytes != null && bytes.length == 0) {
+                cacheMetrics.nullHit(keyPrefix);
+                continue;
+            }
+            RedisData redisData = bytes == null ? null : cacheCodec.decode(bytes, type);
+            if (redisData == null) {
+                cacheMetrics.miss(keyPrefix);
+                misses.add(id);
+                continue;
+            }
+            cacheMetrics.hit(keyPrefix);
+            found.put(id, type.cast(redisData.getData()));
+            if (needRebuild(redisData)) {
+                rebuildAsync(keyPrefix, lockPrefix + id, id, dbFallback, time, unit);
+            }
+        }
+        // 未命中的id一次性查询数据库并回填缓存
+        if (!misses.isEmpty()) {
+            long begin = System.currentTimeMillis();
+            Map<String, R> loaded = new HashMap<>(misses.size() * 4 / 3 + 1);
+            for (R r : batchFallback.apply(misses)) {
+                found.put(idGetter.apply(r), r);
+                loaded.put(keyPrefix + idGetter.apply(r), r);
+            }
+            setWithLogicalExpireBatch(loaded, time, unit, System.currentTimeMillis() - begin);
+            List<byte[]> nullKeys = new ArrayList<>();
+            for (ID id : misses) {
+                if (!found.containsKey(id)) {
+                    nullKeys.add(rawKey(keyPrefix + id));
+                }
+            }
+            if (!nullKeys.isEmpty()) {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (byte[] key : nullKeys) {
+                        connection.setEx(key, ttlPolicy.nullTtlSeconds(), new byte[0]);
+                    }
+                    return null;
+                });
+            }
+            cacheMetrics.rebuild(keyPrefix, System.currentTimeMillis() - begin);
+        }
+        // 按调用方的顺序返回
+        List<R> result = new ArrayList<>(found.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 提交到重建调度器，在重建线程中获取互斥锁后重建缓存
+     */
+    private <R, ID> void rebuildAsync(
+            String keyPrefix, String lockKey, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        cacheRebuildScheduler.submit(keyPrefix + id, () -> {
+            // 本实例内已按key去重，互斥锁只用于多实例之间
+            if (!tryLock(lockKey)) {
+                cacheMetrics.lockContention(keyPrefix);
+                return;
+            }
+            try {
+                rebuild(keyPrefix, id, dbFallback, time, unit);
+            } finally {
+                unLock(lockKey);
+            }
+        });
+    }
+
+    /**
+     * 查询数据库并写入逻辑过期缓存，同时记录查询耗时
+     */
+    private <R, ID> R rebuild(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        long begin = System.currentTimeMillis();
+        R r = dbFallback.apply(id);
+        long cost = System.currentTimeMillis() - begin;
+        if (r == null) {
+            stringRedisTemplate.opsForValue().set(key, "", ttlPolicy.nullTtlSeconds(), TimeUnit.SECONDS);
+        } else {
+            this.setWithLogicalExpire(key, r, time, unit, cost);
+        }
+        cacheMetrics.rebuild(keyPrefix, System.currentTimeMillis() - begin);
+        return r;
+    }
+
+    /**
+     * 判断是否需要重建：已过期一定重建；开启提前刷新时，越接近过期、重建越慢，提前重建的概率越高
+     * <p>
+     * 即 XFetch 算法：now - rebuildMillis * beta * ln(random) >= expireTime
+     */
+    private boolean needRebuild(RedisData redisData) {
+        long expireMillis = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long now = System.currentTimeMillis();
+        if (now >= expireMillis) {
+            return true;
+        }
+        Long rebuildMillis = redisData.getRebuildMillis();
+        if (!earlyRefreshEnabled || rebuildMillis == null || rebuildMillis <= 0) {
+            return false;
+        }
+        double random = ThreadLocalRandom.current().nextDouble();
+        return now - rebuildMillis * earlyRefreshBeta * Math.log(random) >= expireMillis;
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R toBean(String json, Type type) {
+        return (R) JSONUtil.toBean(json, type, false);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean tryLock(String key) {
+        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", LOCK_SHOP_TTL, TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(flag);
+    }
+
+    private void unLock(String key) {
+        stringRedisTemplate.delete(key);
+    }
+}
@@ -0,0 +1,20 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Type;
+
+/**
+ * 逻辑过期缓存的编解码器，负责 RedisData 与redis中字节的互相转换
+ */
+public interface CacheCodec {
+
+    byte[] encode(RedisData redisData);
+
+    /**
+     * 解码，data会被转换为type类型
+     *
+     * @param bytes redis中的值
+     * @param type  data的类型
+     * @return 无法解码（例如实体结构已变化）时返回null，由调用方当作未命中处理
+     */
+    RedisData decode(byte[] bytes, Type type);
+}
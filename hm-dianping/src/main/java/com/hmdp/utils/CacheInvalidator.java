@@ -0,0 +1,210 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_RETRY_KEY;
+
+/**
+ * 缓存失效：删除redis缓存并通知所有实例清除本地缓存
+ * <p>
+ * 1. 在事务中调用时等事务提交后再删除，避免提交前有请求把旧数据重新写回缓存；
+ * 2. 延迟一段时间后再删除一次（延迟双删），清掉删除与提交之间并发重建写入的旧数据；
+ * 3. 删除失败的key进入重试队列，队列保存在redis的zset中(score为下次重试时间)，实例重启不丢失；
+ * redis本身不可用时先暂存在本地队列，恢复后再转入zset
+ */
+@Slf4j
+@Component
+public class CacheInvalidator implements MetricsSource {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private NearCache nearCache;
+    @Resource
+    private HotKeyCache hotKeyCache;
+
+    @Value("${hmdp.cache.invalidate.delay-millis:500}")
+    private long delayMillis;
+    @Value("${hmdp.cache.invalidate.retry-interval-millis:1000}")
+    private long retryIntervalMillis;
+    @Value("${hmdp.cache.invalidate.retry-batch-size:100}")
+    private int retryBatchSize;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidate");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * redis不可用、无法写入重试队列时暂存的key
+     */
+    private final Queue<String> localRetryQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        executor.scheduleWithFixedDelay(this::retry, retryIntervalMillis, retryIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+        // 尽量把本地暂存的key转入redis，交给其它实例重试
+        String key;
+        while ((key = localRetryQueue.poll()) != null) {
+            if (!enqueue(key)) {
+                log.warn("缓存失效未完成, key={}", key);
+            }
+        }
+    }
+
+    /**
+     * 失效缓存，在事务中调用时等事务提交后执行
+     *
+     * @param key 缓存key
+     */
+    public void invalidate(String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateNow(key);
+                }
+            });
+        } else {
+            invalidateNow(key);
+        }
+    }
+
+    /**
+     * 等待重试的key数量，redis不可用时只统计本地暂存的部分
+     */
+    public long pending() {
+        long pending = localRetryQueue.size();
+        try {
+            Long size = stringRedisTemplate.opsForZSet().zCard(CACHE_INVALIDATE_RETRY_KEY);
+            pending += size == null ? 0 : size;
+        } catch (Exception e) {
+            log.debug("查询缓存失效重试队列失败", e);
+        }
+        return pending;
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter out) {
+        out.gauge("hmdp_cache_invalidation_pending", "Invalidations waiting for retry.", pending());
+        out.counter("hmdp_cache_invalidation_failed_total", "Failed cache deletes.", failed());
+    }
+
+    /**
+     * 累计删除失败次数
+     */
+    public long failed() {
+        return failed.get();
+    }
+
+    /**
+     * 累计通过重试完成的失效数
+     */
+    public long retried() {
+        return retried.get();
+    }
+
+    private void invalidateNow(String key) {
+        if (!delete(key)) {
+            retryLater(key);
+        }
+        executor.schedule(() -> {
+            if (!delete(key)) {
+                retryLater(key);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean delete(String key) {
+        try {
+            stringRedisTemplate.delete(key);
+            // 本实例的本地缓存直接清除，不等失效消息
+            hotKeyCache.evict(key);
+            nearCache.invalidate(key);
+            return true;
+        } catch (Exception e) {
+            // 本实例的本地缓存至少要清掉
+            hotKeyCache.evict(key);
+            nearCache.evict(key);
+            failed.incrementAndGet();
+            log.warn("删除缓存失败, 稍后重试, key={}", key, e);
+            return false;
+        }
+    }
+
+    private void retryLater(String key) {
+        if (!enqueue(key)) {
+            localRetryQueue.add(key);
+        }
+    }
+
+    private boolean enqueue(String key) {
+        try {
+            stringRedisTemplate.opsForZSet().add(CACHE_INVALIDATE_RETRY_KEY, key,
+                    System.currentTimeMillis() + retryIntervalMillis);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void retry() {
+        try {
+            // 本地暂存的key先直接重试一次
+            for (int i = localRetryQueue.size(); i > 0; i--) {
+                String key = localRetryQueue.poll();
+                if (key == null) {
+                    break;
+                }
+                if (delete(key)) {
+                    retried.incrementAndGet();
+                } else {
+                    localRetryQueue.add(key);
+                    return;
+                }
+            }
+            Set<String> keys = stringRedisTemplate.opsForZSet().rangeByScore(
+                    CACHE_INVALIDATE_RETRY_KEY, 0, System.currentTimeMillis(), 0, retryBatchSize);
+            if (keys == null) {
+                return;
+            }
+            for (String key : keys) {
+                // 多个实例同时重试时只有移除成功的实例负责删除
+                Long removed = stringRedisTemplate.opsForZSet().remove(CACHE_INVALIDATE_RETRY_KEY, key);
+                if (removed == null || removed == 0) {
+                    continue;
+                }
+                if (delete(key)) {
+                    retried.incrementAndGet();
+                } else {
+                    retryLater(key);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("缓存失效重试失败", e);
+        }
+    }
+}
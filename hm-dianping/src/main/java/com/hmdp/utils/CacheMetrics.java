@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按缓存族(key前缀)统计的缓存指标
+ * <p>
+ * 包括命中、未命中、命中空值、互斥锁竞争失败次数以及重建耗时的直方图；
+ * 其它组件的指标由各组件实现 {@link MetricsSource} 自行输出
+ */
+@Component
+public class CacheMetrics implements MetricsSource {
+
+    /**
+     * 重建耗时直方图的桶上界，毫秒
+     */
+    private static final long[] BUCKETS_MILLIS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500};
+
+    private final Map<String, FamilyMetrics> families = new ConcurrentHashMap<>();
+
+    public void hit(String family) {
+        of(family).hits.increment();
+    }
+
+    public void miss(String family) {
+        of(family).misses.increment();
+    }
+
+    public void nullHit(String family) {
+        of(family).nullHits.increment();
+    }
+
+    /**
+     * 获取互斥锁失败，说明有其它线程或实例正在重建
+     */
+    public void lockContention(String family) {
+        of(family).lockContention.increment();
+    }
+
+    /**
+     * 记录一次重建(查询数据库并写入缓存)的耗时
+     */
+    public void rebuild(String family, long millis) {
+        FamilyMetrics metrics = of(family);
+        for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+            if (millis <= BUCKETS_MILLIS[i]) {
+                metrics.buckets[i].increment();
+                break;
+            }
+        }
+        metrics.rebuildCount.increment();
+        metrics.rebuildMillis.add(millis);
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter out) {
+        out.header("hmdp_cache_requests_total", "Cache reads by family and result.", "counter");
+        families.forEach((family, metrics) -> {
+            out.sample("hmdp_cache_requests_total", labels(family, "result=\"hit\""), metrics.hits.sum());
+            out.sample("hmdp_cache_requests_total", labels(family, "result=\"miss\""), metrics.misses.sum());
+            out.sample("hmdp_cache_requests_total", labels(family, "result=\"null\""), metrics.nullHits.sum());
+        });
+        out.header("hmdp_cache_lock_contention_total", "Failed attempts to acquire the rebuild lock.", "counter");
+        families.forEach((family, metrics) ->
+                out.sample("hmdp_cache_lock_contention_total", labels(family, null), metrics.lockContention.sum()));
+        out.header("hmdp_cache_rebuild_seconds", "Time spent loading from the database and writing the cache.", "histogram");
+        families.forEach((family, metrics) -> {
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+                cumulative += metrics.buckets[i].sum();
+                out.sample("hmdp_cache_rebuild_seconds_bucket",
+                        labels(family, "le=\"" + BUCKETS_MILLIS[i] / 1000.0 + "\""), cumulative);
+            }
+            long count = metrics.rebuildCount.sum();
+            out.sample("hmdp_cache_rebuild_seconds_bucket", labels(family, "le=\"+Inf\""), count);
+            out.sample("hmdp_cache_rebuild_seconds_sum", labels(family, null), metrics.rebuildMillis.sum() / 1000.0);
+            out.sample("hmdp_cache_rebuild_seconds_count", labels(family, null), count);
+        });
+    }
+
+    private FamilyMetrics of(String family) {
+        FamilyMetrics metrics = families.get(family);
+        return metrics != null ? metrics : families.computeIfAbsent(family, k -> new FamilyMetrics());
+    }
+
+    private static String labels(String family, String label) {
+        return "family=\"" + family + "\"" + (label == null ? "" : "," + label);
+    }
+
+    private static class FamilyMetrics {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder nullHits = new LongAdder();
+        private final LongAdder lockContention = new LongAdder();
+        private final LongAdder rebuildCount = new LongAdder();
+        private final LongAdder rebuildMillis = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS_MILLIS.length];
+
+        FamilyMetrics() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+}
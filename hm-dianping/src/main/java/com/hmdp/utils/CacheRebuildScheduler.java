@@ -0,0 +1,173 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 逻辑过期缓存的异步重建调度
+ * <p>
+ * 1. 同一个key在排队或重建中时不重复提交；
+ * 2. 队列有界，满了直接拒绝，调用方继续返回旧数据，下次读到过期数据时再提交；
+ * 3. 按key的热度排序，大量key同时过期时优先重建访问最多的；
+ * 4. 关闭时等待已提交的任务完成
+ */
+@Slf4j
+@Component
+public class CacheRebuildScheduler implements MetricsSource {
+
+    @Resource
+    private HotKeyCache hotKeyCache;
+
+    @Value("${hmdp.cache.rebuild.threads:10}")
+    private int threads;
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${hmdp.cache.rebuild.shutdown-timeout-seconds:10}")
+    private long shutdownTimeoutSeconds;
+
+    private ThreadPoolExecutor executor;
+    /**
+     * 排队或重建中的key
+     */
+    private final Map<String, Boolean> pendingKeys = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet()));
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+            log.warn("缓存重建任务未在{}秒内完成, 剩余{}个任务被丢弃", shutdownTimeoutSeconds, executor.shutdownNow().size());
+        }
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key  缓存key，用于去重和计算热度
+     * @param task 重建逻辑
+     * @return 已有相同key的任务、队列已满或正在关闭时返回false
+     */
+    public boolean submit(String key, Runnable task) {
+        if (pendingKeys.putIfAbsent(key, Boolean.TRUE) != null) {
+            return false;
+        }
+        if (executor.getQueue().size() >= queueCapacity || executor.isShutdown()) {
+            pendingKeys.remove(key);
+            rejected.incrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(new Task(key, task, hotKeyCache.estimateQps(key), sequence.incrementAndGet()));
+        } catch (RejectedExecutionException e) {
+            // 检查之后才开始关闭，同样当作拒绝，否则key会一直留在pendingKeys里不再重建
+            pendingKeys.remove(key);
+            rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int active() {
+        return executor.getActiveCount();
+    }
+
+    public long completed() {
+        return completed.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter out) {
+        out.gauge("hmdp_cache_rebuild_queue_depth", "Queued asynchronous rebuild tasks.", queueDepth());
+        out.counter("hmdp_cache_rebuild_failed_total", "Failed asynchronous rebuild tasks.", failed());
+        out.counter("hmdp_cache_rebuild_rejected_total", "Rebuild tasks rejected because the queue was full or the scheduler was shutting down.", rejected());
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * 平均重建耗时，毫秒
+     */
+    public long averageMillis() {
+        long count = completed.get() + failed.get();
+        return count == 0 ? 0 : totalMillis.get() / count;
+    }
+
+    public long maxMillis() {
+        return maxMillis.get();
+    }
+
+    private class Task implements Runnable, Comparable<Task> {
+        private final String key;
+        private final Runnable delegate;
+        private final double priority;
+        private final long seq;
+
+        Task(String key, Runnable delegate, double priority, long seq) {
+            this.key = key;
+            this.delegate = delegate;
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            long begin = System.currentTimeMillis();
+            try {
+                delegate.run();
+                completed.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("缓存重建失败, key={}", key, e);
+            } finally {
+                pendingKeys.remove(key);
+                long cost = System.currentTimeMillis() - begin;
+                totalMillis.addAndGet(cost);
+                maxMillis.accumulateAndGet(cost, Math::max);
+            }
+        }
+
+        /**
+         * 热度高的先执行，热度相同按提交顺序
+         */
+        @Override
+        public int compareTo(Task other) {
+            int compare = Double.compare(other.priority, priority);
+            return compare != 0 ? compare : Long.compare(seq, other.seq);
+        }
+    }
+}
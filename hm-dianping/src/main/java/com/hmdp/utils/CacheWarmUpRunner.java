@@ -0,0 +1,145 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 应用启动时预热缓存：分页读取店铺、店铺分类、秒杀券库存，通过pipeline批量写入redis
+ * <p>
+ * hmdp.warmup.hold-readiness 为 true 时同步执行，预热完成前应用不会进入就绪状态，
+ * 避免新节点上线后大量请求直接打到数据库；为 false 时在后台线程执行
+ */
+@Slf4j
+@Order(10)
+@Component
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    private static final int PAGE_SIZE = 500;
+
+    @Value("${hmdp.warmup.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.warmup.hold-readiness:true}")
+    private boolean holdReadiness;
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private IShopTypeService shopTypeService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private TtlPolicy ttlPolicy;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        if (holdReadiness) {
+            warmUp();
+        } else {
+            Thread thread = new Thread(this::warmUp, "cache-warm-up");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void warmUp() {
+        long begin = System.currentTimeMillis();
+        log.info("开始预热缓存");
+        try {
+            warmUpShops();
+            warmUpShopTypes();
+            warmUpSeckillStock();
+            log.info("缓存预热完成, 耗时{}ms", System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            // 预热失败不影响启动，未预热的key会在首次访问时加载
+            log.error("缓存预热失败, 耗时{}ms", System.currentTimeMillis() - begin, e);
+        }
+    }
+
+    /**
+     * 按主键分页读取店铺，写入逻辑过期缓存和按类型划分的GEO集合
+     */
+    private void warmUpShops() {
+        long begin = System.currentTimeMillis();
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            long pageBegin = System.currentTimeMillis();
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .gt("id", lastId).orderByAsc("id").last("limit " + PAGE_SIZE));
+            if (shops.isEmpty()) {
+                break;
+            }
+            Map<String, Shop> values = new HashMap<>(shops.size() * 4 / 3 + 1);
+            for (Shop shop : shops) {
+                values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            // 记录每页的查询耗时，预热的key同样参与提前刷新，不会在同一时刻一起过期
+            cacheClient.setWithLogicalExpireBatch(values, ttlPolicy.minutes(TtlPolicy.Family.SHOP), TimeUnit.MINUTES,
+                    System.currentTimeMillis() - pageBegin);
+            shopService.saveShopGeo(shops);
+            total += shops.size();
+            lastId = shops.get(shops.size() - 1).getId();
+            log.debug("店铺缓存预热中, 已写入{}条", total);
+        }
+        log.info("店铺缓存预热完成, 共{}条, 耗时{}ms", total, System.currentTimeMillis() - begin);
+    }
+
+    private void warmUpShopTypes() {
+        long begin = System.currentTimeMillis();
+        shopTypeService.saveTypeListRedis();
+        log.info("店铺分类缓存预热完成, 耗时{}ms", System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 按主键分页读取秒杀券，写入库存与秒杀时间
+     * <p>
+     * 库存只在不存在时写入，避免重启时用数据库的库存覆盖redis中正在扣减的库存；每页的分段一次查询，pipeline写入
+     */
+    private void warmUpSeckillStock() {
+        long begin = System.currentTimeMillis();
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            List<SeckillVoucher> vouchers = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                    .gt("voucher_id", lastId).orderByAsc("voucher_id").last("limit " + PAGE_SIZE));
+            if (vouchers.isEmpty()) {
+                break;
+            }
+            // 与新增秒杀券时的布局一致，分段的秒杀券写入各分段库存
+            seckillVoucherService.saveStockRedis(vouchers);
+            total += vouchers.size();
+            lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+            log.debug("秒杀库存预热中, 已写入{}条", total);
+        }
+        log.info("秒杀库存预热完成, 共{}条, 耗时{}ms", total, System.currentTimeMillis() - begin);
+    }
+}
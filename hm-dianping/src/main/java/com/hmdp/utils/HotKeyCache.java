@@ -0,0 +1,202 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 热点key探测与本地缓存
+ * <p>
+ * 读路径上按采样率把访问计入count-min sketch(无锁的计数数组)，计数每个窗口减半衰减，
+ * 由计数估算出的QPS超过阈值的key被提升为热点，其值缓存在本地、存活时间很短；
+ * 估算QPS降到阈值一半以下时降级，不再本地缓存。
+ * 失效消息与一级缓存共用同一个频道
+ */
+@Slf4j
+@Component
+public class HotKeyCache implements MessageListener {
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 14;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${hmdp.hotkey.qps-threshold:500}")
+    private double qpsThreshold;
+    @Value("${hmdp.hotkey.sample-rate:0.1}")
+    private double sampleRate;
+    @Value("${hmdp.hotkey.window-millis:1000}")
+    private long windowMillis;
+    @Value("${hmdp.hotkey.local-ttl-millis:1000}")
+    private long localTtlMillis;
+
+    private final AtomicLongArray sketch = new AtomicLongArray(DEPTH * WIDTH);
+    /**
+     * 当前的热点key及其本地缓存的值，值为空表示已提升但尚未写入
+     */
+    private final Map<String, Entry> hotKeys = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService decayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hot-key-decay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        decayExecutor.scheduleAtFixedRate(this::decay, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        decayExecutor.shutdownNow();
+    }
+
+    /**
+     * 记录一次访问，key为热点且本地缓存未过期时返回缓存的值
+     *
+     * @param key redis的key
+     * @return 非热点或未命中时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            long count = increment(key);
+            if (!hotKeys.containsKey(key) && toQps(count) >= qpsThreshold) {
+                hotKeys.putIfAbsent(key, new Entry(null, 0));
+                log.info("发现热点key: {}, 估算QPS: {}", key, (long) toQps(count));
+            }
+        }
+        Entry entry = hotKeys.get(key);
+        if (entry == null || entry.value == null || entry.expireAt < System.currentTimeMillis()) {
+            return null;
+        }
+        return (T) entry.value;
+    }
+
+    /**
+     * 写入本地缓存，只有热点key会被缓存
+     */
+    public void put(String key, Object value) {
+        if (value != null && hotKeys.containsKey(key)) {
+            hotKeys.computeIfPresent(key, (k, old) -> new Entry(value, System.currentTimeMillis() + localTtlMillis));
+        }
+    }
+
+    /**
+     * 当前的热点key，按估算QPS从高到低
+     */
+    public List<HotKey> hotKeys() {
+        List<HotKey> list = new ArrayList<>(hotKeys.size());
+        for (String key : hotKeys.keySet()) {
+            list.add(new HotKey(key, (long) toQps(estimate(key))));
+        }
+        list.sort(Comparator.comparingLong(HotKey::getQps).reversed());
+        return list;
+    }
+
+    /**
+     * 估算key当前的QPS，不计入访问
+     */
+    public double estimateQps(String key) {
+        return toQps(estimate(key));
+    }
+
+    /**
+     * 清除本实例缓存的值，key仍然是热点，下次读取时重新写入
+     */
+    public void evict(String key) {
+        hotKeys.computeIfPresent(key, (k, old) -> new Entry(null, 0));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        evict(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private long increment(String key) {
+        long hash = key.hashCode();
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, sketch.incrementAndGet(index(hash, i)));
+        }
+        return min;
+    }
+
+    private long estimate(String key) {
+        long hash = key.hashCode();
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, sketch.get(index(hash, i)));
+        }
+        return min;
+    }
+
+    private static int index(long hash, int row) {
+        return row * WIDTH + (int) (BloomFilter.mix64(hash + row * 0x9E3779B97F4A7C15L) & (WIDTH - 1));
+    }
+
+    /**
+     * 计数每个窗口减半，稳定状态下计数约为 2 * 每窗口采样数
+     */
+    private double toQps(long count) {
+        return count / 2.0 / sampleRate * 1000 / windowMillis;
+    }
+
+    private void decay() {
+        for (int i = 0; i < sketch.length(); i++) {
+            long value = sketch.get(i);
+            if (value != 0) {
+                sketch.getAndAccumulate(i, 0, (current, ignored) -> current >>> 1);
+            }
+        }
+        hotKeys.keySet().removeIf(key -> {
+            boolean cold = toQps(estimate(key)) < qpsThreshold / 2;
+            if (cold) {
+                log.info("热点key降级: {}", key);
+            }
+            return cold;
+        });
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class HotKey {
+        private String key;
+        private long qps;
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
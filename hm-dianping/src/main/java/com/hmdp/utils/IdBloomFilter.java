@@ -0,0 +1,184 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.User;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 店铺、笔记、用户id的布隆过滤器，拦截一定不存在的id，防止缓存穿透
+ * <p>
+ * 启动时从数据库分批加载已有id，加载完成前一律放行；
+ * hmdp.bloom.mode 为 local 时使用进程内位数组，新增的id通过缓存失效频道广播给其它实例；
+ * 为 redis 时使用所有实例共享的bitmap，bitmap丢失时一律放行。
+ * 调用方应先查本地缓存，只对未命中的id查询过滤器
+ */
+@Slf4j
+@Component
+public class IdBloomFilter implements ApplicationRunner, MessageListener {
+
+    public static final String SHOP = "shop";
+    public static final String BLOG = "blog";
+    public static final String USER = "user";
+
+    private static final int LOAD_BATCH_SIZE = 5000;
+
+    @Value("${hmdp.bloom.mode:local}")
+    private String mode;
+    @Value("${hmdp.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private BlogMapper blogMapper;
+    @Resource
+    private UserMapper userMapper;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final Map<String, BloomFilter> filters = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    private void init() {
+        for (String family : new String[]{SHOP, BLOG, USER}) {
+            filters.put(family, "redis".equals(mode)
+                    ? new RedisBloomFilter(stringRedisTemplate, BLOOM_KEY + family, expectedInsertions, fpp)
+                    : new LocalBloomFilter(expectedInsertions, fpp));
+        }
+        if (!isShared()) {
+            // 在加载已有id之前订阅，加载期间其它实例的新增也不会丢
+            redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long begin = System.currentTimeMillis();
+        load(SHOP, shopMapper, new QueryWrapper<Shop>());
+        load(BLOG, blogMapper, new QueryWrapper<Blog>());
+        load(USER, userMapper, new QueryWrapper<User>());
+        ready = true;
+        log.info("布隆过滤器加载完成, mode={}, 耗时{}ms", mode, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 按主键分批加载id，避免一次性查询全表
+     */
+    private <T> void load(String family, BaseMapper<T> mapper, QueryWrapper<T> wrapper) {
+        BloomFilter filter = filters.get(family);
+        long lastId = 0;
+        while (true) {
+            wrapper.clear();
+            wrapper.select("id").gt("id", lastId).orderByAsc("id").last("limit " + LOAD_BATCH_SIZE);
+            List<Long> ids = mapper.selectObjs(wrapper).stream()
+                    .map(o -> ((Number) o).longValue())
+                    .collect(Collectors.toList());
+            if (ids.isEmpty()) {
+                return;
+            }
+            filter.addAll(ids);
+            lastId = ids.get(ids.size() - 1);
+        }
+    }
+
+    /**
+     * 判断id是否可能存在，加载完成前一律返回true
+     *
+     * @param family 业务类型
+     * @param id
+     * @return
+     */
+    public boolean mightContain(String family, Long id) {
+        if (id == null) {
+            return false;
+        }
+        return !ready || filters.get(family).mightContain(id);
+    }
+
+    /**
+     * 批量判断id是否可能存在，redis模式下一次往返完成，加载完成前全部返回
+     *
+     * @param family 业务类型
+     * @param ids
+     * @return 可能存在的id，保持原有顺序
+     */
+    public List<Long> mightContainAll(String family, Collection<Long> ids) {
+        List<Long> nonNull = ids.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        return !ready || nonNull.isEmpty() ? nonNull : filters.get(family).mightContainAll(nonNull);
+    }
+
+    /**
+     * 新增数据后写入过滤器
+     *
+     * @param family 业务类型
+     * @param id
+     */
+    public void add(String family, Long id) {
+        if (id == null) {
+            return;
+        }
+        filters.get(family).add(id);
+        if (!isShared()) {
+            try {
+                stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, BLOOM_KEY + family + ":" + id);
+            } catch (Exception e) {
+                log.warn("广播布隆过滤器新增失败, family={}, id={}", family, id, e);
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!key.startsWith(BLOOM_KEY)) {
+            return;
+        }
+        int split = key.lastIndexOf(':');
+        BloomFilter filter = filters.get(key.substring(BLOOM_KEY.length(), split));
+        if (filter == null) {
+            return;
+        }
+        try {
+            filter.add(Long.parseLong(key.substring(split + 1)));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的布隆过滤器消息: {}", key);
+        }
+    }
+
+    private boolean isShared() {
+        return "redis".equals(mode);
+    }
+}
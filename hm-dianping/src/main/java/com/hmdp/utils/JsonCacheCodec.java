@@ -0,0 +1,34 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONUtil;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON编解码，与之前直接写入的JSON字符串格式一致
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(RedisData redisData) {
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public RedisData decode(byte[] bytes, Type type) {
+        RedisData redisData;
+        try {
+            redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+            if (redisData.getExpireTime() == null || !(redisData.getData() instanceof JSON)) {
+                return null;
+            }
+            redisData.setData(JSONUtil.toBean((JSON) redisData.getData(), type, false));
+        } catch (RuntimeException e) {
+            // 不是JSON格式，例如切换编码后残留的二进制数据，当作未命中
+            return null;
+        }
+        return redisData;
+    }
+}
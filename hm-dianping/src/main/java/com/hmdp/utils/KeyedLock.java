@@ -0,0 +1,17 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 按key加锁，相同的key得到同一把锁
+ */
+public interface KeyedLock {
+
+    /**
+     * 获取key对应的锁，调用方负责加锁和释放
+     *
+     * @param key 锁的key，例如 lock:order:{userId}
+     * @return 锁
+     */
+    Lock getLock(String key);
+}
@@ -0,0 +1,53 @@
+package com.hmdp.utils;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基于进程内位数组的布隆过滤器，读写无锁
+ * <p>
+ * 每个实例各自维护，其它实例的新增由 IdBloomFilter 通过发布订阅同步
+ */
+public class LocalBloomFilter implements BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashFunctions;
+
+    public LocalBloomFilter(long expectedInsertions, double fpp) {
+        long m = BloomFilter.optimalNumOfBits(expectedInsertions, fpp);
+        this.bits = new AtomicLongArray((int) ((m + 63) >>> 6));
+        this.numBits = (long) bits.length() << 6;
+        this.numHashFunctions = BloomFilter.optimalNumOfHashFunctions(expectedInsertions, numBits);
+    }
+
+    @Override
+    public boolean mightContain(long id) {
+        for (long index : BloomFilter.indexes(id, numHashFunctions, numBits)) {
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void add(long id) {
+        for (long index : BloomFilter.indexes(id, numHashFunctions, numBits)) {
+            int i = (int) (index >>> 6);
+            long mask = 1L << index;
+            long old;
+            do {
+                old = bits.get(i);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(i, old, old | mask));
+        }
+    }
+
+    @Override
+    public void addAll(Collection<Long> ids) {
+        ids.forEach(this::add);
+    }
+}
@@ -0,0 +1,107 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * 带超时的加锁执行，并统计锁竞争情况
+ * <p>
+ * 先不等待地尝试加锁，失败时计为一次竞争，再最多等待配置的时间；超时则不执行并返回调用方给出的结果
+ */
+@Slf4j
+@Component
+public class LockTemplate implements MetricsSource {
+
+    @Resource
+    private KeyedLock keyedLock;
+
+    @Value("${hmdp.lock.wait-millis:500}")
+    private long waitMillis;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * 加锁后执行
+     *
+     * @param key       锁的key
+     * @param action    加锁成功后执行的逻辑
+     * @param onTimeout 等待超时或被中断时返回的结果
+     * @return action或onTimeout的结果
+     */
+    public <T> T executeWithLock(String key, Supplier<T> action, Supplier<T> onTimeout) {
+        Lock lock = keyedLock.getLock(key);
+        if (!acquire(lock)) {
+            timeouts.increment();
+            log.debug("获取锁超时, key={}", key);
+            return onTimeout.get();
+        }
+        acquired.increment();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean acquire(Lock lock) {
+        if (lock.tryLock()) {
+            return true;
+        }
+        contended.increment();
+        long start = System.nanoTime();
+        try {
+            return lock.tryLock(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter out) {
+        out.counter("hmdp_lock_acquired_total", "Keyed locks acquired.", acquired());
+        out.counter("hmdp_lock_contended_total", "Lock attempts that had to wait.", contended());
+        out.counter("hmdp_lock_timeouts_total", "Lock attempts that timed out.", timeouts());
+        out.counter("hmdp_lock_wait_milliseconds_total", "Time spent waiting for contended locks.", waitMillis());
+    }
+
+    /**
+     * 累计加锁成功次数
+     */
+    public long acquired() {
+        return acquired.sum();
+    }
+
+    /**
+     * 累计需要等待的加锁次数
+     */
+    public long contended() {
+        return contended.sum();
+    }
+
+    /**
+     * 累计等待超时次数
+     */
+    public long timeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * 累计等待时间，毫秒
+     */
+    public long waitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+}
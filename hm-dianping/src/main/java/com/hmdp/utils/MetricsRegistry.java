@@ -0,0 +1,25 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * 收集所有 {@link MetricsSource} 的指标，输出Prometheus文本格式
+ */
+@Component
+public class MetricsRegistry {
+
+    @Resource
+    private List<MetricsSource> sources;
+
+    public String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        MetricsWriter out = new MetricsWriter(sb);
+        for (MetricsSource source : sources) {
+            source.writeMetrics(out);
+        }
+        return sb.toString();
+    }
+}
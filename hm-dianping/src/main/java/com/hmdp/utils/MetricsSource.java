@@ -0,0 +1,15 @@
+package com.hmdp.utils;
+
+/**
+ * 对外输出指标的组件实现此接口，由 {@link MetricsRegistry} 收集后统一输出，
+ * 各组件只描述自己的指标，不需要知道其它组件
+ */
+public interface MetricsSource {
+
+    /**
+     * 写出本组件的指标
+     *
+     * @param out Prometheus文本格式的输出
+     */
+    void writeMetrics(MetricsWriter out);
+}
@@ -0,0 +1,46 @@
+package com.hmdp.utils;
+
+/**
+ * Prometheus文本格式的输出
+ */
+public class MetricsWriter {
+
+    private final StringBuilder sb;
+
+    public MetricsWriter(StringBuilder sb) {
+        this.sb = sb;
+    }
+
+    /**
+     * 写出指标的HELP和TYPE行，之后用 {@link #sample} 写出带标签的样本
+     *
+     * @param type counter、gauge或histogram
+     */
+    public MetricsWriter header(String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * 写出一个样本
+     *
+     * @param labels 标签，例如 family="cache:shop:",result="hit"，没有标签时为null
+     */
+    public MetricsWriter sample(String name, String labels, Object value) {
+        sb.append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+        return this;
+    }
+
+    public MetricsWriter counter(String name, String help, long value) {
+        return header(name, help, "counter").sample(name, null, value);
+    }
+
+    public MetricsWriter gauge(String name, String help, long value) {
+        return header(name, help, "gauge").sample(name, null, value);
+    }
+}
@@ -0,0 +1,155 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 进程内一级缓存，放在redis之前，key与redis的key保持一致
+ * <p>
+ * 容量有限，超出时按近似LRU淘汰：随机抽取若干条目，淘汰其中最久未访问的(或已过期的)，
+ * 读路径不加锁，只更新条目的访问时间；条目带有较短的TTL作为兜底，
+ * 多实例之间通过redis的发布订阅广播失效消息保持一致
+ */
+@Slf4j
+@Component
+public class NearCache implements MessageListener {
+
+    /**
+     * 最大条目数
+     */
+    private static final int MAX_SIZE = 1000;
+    /**
+     * 条目存活时间，毫秒
+     */
+    private static final long TTL_MILLIS = 30_000L;
+    /**
+     * 淘汰时抽样的条目数
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>(MAX_SIZE * 4 / 3 + 1);
+
+    @PostConstruct
+    private void init() {
+        // 订阅失效频道
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 查询本地缓存
+     *
+     * @param key
+     * @return 未命中或已过期时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.expireAt < now) {
+            cache.remove(key, entry);
+            return null;
+        }
+        entry.lastAccess = now;
+        return (T) entry.value;
+    }
+
+    public void put(String key, Object value) {
+        if (value == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (cache.put(key, new Entry(value, now + TTL_MILLIS, now)) == null && cache.size() > MAX_SIZE) {
+            evictSample(now);
+        }
+    }
+
+    /**
+     * 从随机位置开始抽取若干条目，淘汰其中最久未访问的，已过期的条目优先淘汰
+     */
+    private void evictSample(long now) {
+        int skip = ThreadLocalRandom.current().nextInt(Math.max(1, cache.size() - EVICTION_SAMPLES));
+        Map.Entry<String, Entry> victim = null;
+        int sampled = 0;
+        for (Map.Entry<String, Entry> candidate : cache.entrySet()) {
+            if (skip-- > 0) {
+                continue;
+            }
+            if (candidate.getValue().expireAt < now) {
+                victim = candidate;
+                break;
+            }
+            if (victim == null || candidate.getValue().lastAccess < victim.getValue().lastAccess) {
+                victim = candidate;
+            }
+            if (++sampled >= EVICTION_SAMPLES) {
+                break;
+            }
+        }
+        if (victim != null) {
+            cache.remove(victim.getKey(), victim.getValue());
+        }
+    }
+
+    /**
+     * 只清除本实例的缓存
+     *
+     * @param key
+     */
+    public void evict(String key) {
+        cache.remove(key);
+    }
+
+    /**
+     * 清除本实例的缓存，并通知其它实例清除
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        evict(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到缓存失效消息, key={}", key);
+        evict(key);
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expireAt;
+        /**
+         * 最近访问时间，并发更新时丢失个别写入不影响淘汰的效果
+         */
+        private volatile long lastAccess;
+
+        private Entry(Object value, long expireAt, long lastAccess) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页的游标：上一页最后一条记录的排序字段与id，对前端是不透明的字符串
+ * <p>
+ * 下一页通过 where (sort, id) 在游标之后 的条件配合联合索引定位，不需要count和offset。
+ * 游标带有类型，一种分页方式生成的游标不能用于另一种，例如结果位置不能被当作id使用
+ */
+@Data
+@AllArgsConstructor
+public class PageCursor {
+
+    /**
+     * 游标类型，编码在游标的开头
+     */
+    public enum Kind {
+        /**
+         * 按id排序，sortKey与id相同
+         */
+        ID("i"),
+        /**
+         * 按点赞数和id排序
+         */
+        LIKED("l"),
+        /**
+         * 按匹配程度排序的搜索结果，sortKey是下一页在结果中的位置
+         */
+        OFFSET("o");
+
+        private final String code;
+
+        Kind(String code) {
+            this.code = code;
+        }
+    }
+
+    private Kind kind;
+    private long sortKey;
+    private long id;
+
+    public String encode() {
+        String raw = kind.code + ":" + sortKey + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标
+     *
+     * @param cursor
+     * @param kind   期望的游标类型
+     * @return 游标为空、格式错误或类型不符时返回null
+     */
+    public static PageCursor decode(String cursor, Kind kind) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", -1);
+            if (parts.length != 3 || !kind.code.equals(parts[0])) {
+                return null;
+            }
+            long sortKey = Long.parseLong(parts[1]);
+            if (kind == Kind.OFFSET && (sortKey < 0 || sortKey > Integer.MAX_VALUE)) {
+                return null;
+            }
+            return new PageCursor(kind, sortKey, Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 判断游标是否合法，空游标表示第一页，是合法的
+     */
+    public static boolean isValid(String cursor, Kind kind) {
+        return StrUtil.isBlank(cursor) || decode(cursor, kind) != null;
+    }
+}
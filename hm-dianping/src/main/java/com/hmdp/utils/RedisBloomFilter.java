@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于redis bitmap的布隆过滤器，所有实例共享同一份位数组
+ * <p>
+ * 一次判断(包括批量判断)的多个GETBIT通过pipeline一次往返完成。
+ * bitmap不存在(被清空或淘汰)时无法判断，一律当作可能存在，避免拒绝所有合法的id
+ */
+@Slf4j
+public class RedisBloomFilter implements BloomFilter {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final byte[] key;
+    private final long numBits;
+    private final int numHashFunctions;
+    /**
+     * bitmap是否已丢失，只在状态变化时记录日志
+     */
+    private volatile boolean missing;
+
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, String key, long expectedInsertions, double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.key = key.getBytes(StandardCharsets.UTF_8);
+        // redis bitmap 最大 2^32 位
+        this.numBits = Math.min(BloomFilter.optimalNumOfBits(expectedInsertions, fpp), 1L << 32);
+        this.numHashFunctions = BloomFilter.optimalNumOfHashFunctions(expectedInsertions, numBits);
+    }
+
+    @Override
+    public boolean mightContain(long id) {
+        return !mightContainAll(Collections.singletonList(id)).isEmpty();
+    }
+
+    @Override
+    public List<Long> mightContainAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<long[]> indexes = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            indexes.add(BloomFilter.indexes(id, numHashFunctions, numBits));
+        }
+        // 第一条命令判断bitmap是否存在，之后依次是每个id的GETBIT
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.exists(key);
+            for (long[] idIndexes : indexes) {
+                for (long index : idIndexes) {
+                    connection.getBit(key, index);
+                }
+            }
+            return null;
+        });
+        if (!Boolean.TRUE.equals(results.get(0))) {
+            if (!missing) {
+                missing = true;
+                log.warn("布隆过滤器的bitmap不存在, 暂时放行所有id, key={}", new String(key, StandardCharsets.UTF_8));
+            }
+            return new ArrayList<>(ids);
+        }
+        missing = false;
+        List<Long> result = new ArrayList<>(ids.size());
+        int i = 1;
+        for (Long id : ids) {
+            boolean contains = true;
+            for (int j = 0; j < numHashFunctions; j++, i++) {
+                contains &= Boolean.TRUE.equals(results.get(i));
+            }
+            if (contains) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void add(long id) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            setBits(connection, id);
+            return null;
+        });
+    }
+
+    @Override
+    public void addAll(Collection<Long> ids) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                setBits(connection, id);
+            }
+            return null;
+        });
+    }
+
+    private void setBits(RedisConnection connection, long id) {
+        for (long index : BloomFilter.indexes(id, numHashFunctions, numBits)) {
+            connection.setBit(key, index, true);
+        }
+    }
+}
@@ -11,10 +11,44 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final Long CACHE_SHOP_TYPE_TTL = 30L;
+    public static final String CACHE_SHOP_TYPE_KEY = "typeList";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_INVALIDATE_RETRY_KEY = "cache:invalidate:retry";
+
+    public static final String BLOOM_KEY = "bloom:";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_ORDER_KEY = "lock:order:";
+
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final Long CACHE_SHOP_VOUCHER_TTL = 1L;
+    public static final String CACHE_SHOP_VOUCHER_KEY = "cache:voucher:shop:";
+    public static final String CACHE_SECKILL_VOUCHER_KEY = "cache:voucher:seckill:";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_STOCK_FIELD = "stock";
+    public static final String SECKILL_BEGIN_FIELD = "begin";
+    public static final String SECKILL_END_FIELD = "end";
+    public static final String SECKILL_SEGMENTS_FIELD = "segments";
+    public static final String SECKILL_SEGMENT_STOCK_FIELD = "stock:";
+    public static final String SECKILL_USERS_SUFFIX = ":users";
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "order-writers";
+    public static final String SECKILL_ORDER_FAILED_KEY = "seckill:order:failed:";
+    public static final Long SECKILL_ORDER_FAILED_TTL = 24L;
+    public static final String SECKILL_ORDER_ADMITTED_KEY = "seckill:order:admitted:";
+    public static final Long SECKILL_ORDER_ADMITTED_TTL = 24L;
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_LIMIT_KEY = "limit:seckill:";
+    public static final String SECKILL_USER_LIMIT_KEY = "limit:seckill:user:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
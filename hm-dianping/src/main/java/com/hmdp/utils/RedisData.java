@@ -8,4 +8,8 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    /**
+     * 上次重建缓存的耗时，毫秒
+     */
+    private Long rebuildMillis;
 }
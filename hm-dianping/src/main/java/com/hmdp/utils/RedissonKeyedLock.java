@@ -0,0 +1,23 @@
+package com.hmdp.utils;
+
+import org.redisson.api.RedissonClient;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 基于Redisson的分布式锁，每个key一把锁，多实例之间互斥；
+ * 加锁时不指定持有时间，由Redisson的看门狗续期，实例宕机后锁自动过期
+ */
+public class RedissonKeyedLock implements KeyedLock {
+
+    private final RedissonClient redissonClient;
+
+    public RedissonKeyedLock(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    @Override
+    public Lock getLock(String key) {
+        return redissonClient.getLock(key);
+    }
+}
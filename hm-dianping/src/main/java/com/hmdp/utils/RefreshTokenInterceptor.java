@@ -13,14 +13,15 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
     private StringRedisTemplate stringRedisTemplate;
+    private TtlPolicy ttlPolicy;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
+    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate, TtlPolicy ttlPolicy) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.ttlPolicy = ttlPolicy;
     }
 
     @Override
@@ -42,7 +43,7 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         // 6.存在，保存用户信息到 ThreadLocal
         UserHolder.saveUser(userDTO);
         // 7.刷新token有效期
-        stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        stringRedisTemplate.expire(key, ttlPolicy.ttlSeconds(TtlPolicy.Family.LOGIN_USER), TimeUnit.SECONDS);
         // 8.放行
         return true;
     }
@@ -0,0 +1,177 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_LIMIT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_USER_LIMIT_KEY;
+
+/**
+ * 秒杀接口的准入控制，超出限制的请求立即返回"系统繁忙"，不占用tomcat线程排队
+ * <p>
+ * 依次检查：
+ * 1. 本实例的令牌桶，保护本实例；
+ * 2. redis中的全局每秒限流和用户限流，一次脚本调用完成，redis不可用时放行，由本实例的限流兜底；
+ * 3. 并发隔离，同时处理的秒杀请求数超过上限时拒绝，避免秒杀占满线程池影响其它接口
+ */
+@Slf4j
+@Component
+public class SeckillLimitInterceptor implements HandlerInterceptor, MetricsSource {
+
+    private static final String PERMIT_ATTRIBUTE = SeckillLimitInterceptor.class.getName() + ".permit";
+    private static final String BUSY_RESPONSE = JSONUtil.toJsonStr(Result.fail("系统繁忙，请稍后重试"));
+    private static final DefaultRedisScript<Long> LIMIT_SCRIPT;
+
+    static {
+        LIMIT_SCRIPT = new DefaultRedisScript<>();
+        LIMIT_SCRIPT.setLocation(new ClassPathResource("seckill_limit.lua"));
+        LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 限流脚本的返回值
+     */
+    private static final long CLUSTER_LIMITED = 1;
+    private static final long USER_LIMITED = 2;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.seckill.limit.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.seckill.limit.node-qps:2000}")
+    private double nodeQps;
+    @Value("${hmdp.seckill.limit.node-burst:200}")
+    private int nodeBurst;
+    @Value("${hmdp.seckill.limit.cluster-qps:10000}")
+    private long clusterQps;
+    @Value("${hmdp.seckill.limit.user-limit:5}")
+    private long userLimit;
+    @Value("${hmdp.seckill.limit.user-window-seconds:1}")
+    private long userWindowSeconds;
+    @Value("${hmdp.seckill.limit.max-concurrent:200}")
+    private int maxConcurrent;
+
+    private TokenBucket nodeBucket;
+    private Semaphore bulkhead;
+    private final LongAdder nodeRejected = new LongAdder();
+    private final LongAdder clusterRejected = new LongAdder();
+    private final LongAdder userRejected = new LongAdder();
+    private final LongAdder concurrencyRejected = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        nodeBucket = new TokenBucket(nodeQps, nodeBurst);
+        bulkhead = new Semaphore(maxConcurrent);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!enabled) {
+            return true;
+        }
+        if (!nodeBucket.tryAcquire()) {
+            nodeRejected.increment();
+            return reject(response);
+        }
+        long limited = checkCluster();
+        if (limited == CLUSTER_LIMITED) {
+            clusterRejected.increment();
+            return reject(response);
+        }
+        if (limited == USER_LIMITED) {
+            userRejected.increment();
+            return reject(response);
+        }
+        if (!bulkhead.tryAcquire()) {
+            concurrencyRejected.increment();
+            return reject(response);
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            bulkhead.release();
+        }
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter out) {
+        out.header("hmdp_seckill_rejected_total", "Seckill requests rejected by admission control.", "counter")
+                .sample("hmdp_seckill_rejected_total", "reason=\"node\"", nodeRejected())
+                .sample("hmdp_seckill_rejected_total", "reason=\"cluster\"", clusterRejected())
+                .sample("hmdp_seckill_rejected_total", "reason=\"user\"", userRejected())
+                .sample("hmdp_seckill_rejected_total", "reason=\"concurrency\"", concurrencyRejected());
+        out.gauge("hmdp_seckill_in_flight", "Seckill requests currently being processed.", inFlight());
+    }
+
+    public long nodeRejected() {
+        return nodeRejected.sum();
+    }
+
+    public long clusterRejected() {
+        return clusterRejected.sum();
+    }
+
+    public long userRejected() {
+        return userRejected.sum();
+    }
+
+    public long concurrencyRejected() {
+        return concurrencyRejected.sum();
+    }
+
+    /**
+     * 正在处理的秒杀请求数
+     */
+    public int inFlight() {
+        return maxConcurrent - bulkhead.availablePermits();
+    }
+
+    private long checkCluster() {
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            // 未登录的请求由登录拦截器处理
+            return 0;
+        }
+        long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        try {
+            Long result = stringRedisTemplate.execute(LIMIT_SCRIPT,
+                    Arrays.asList(SECKILL_LIMIT_KEY + second, SECKILL_USER_LIMIT_KEY + user.getId()),
+                    String.valueOf(clusterQps), String.valueOf(userLimit), String.valueOf(userWindowSeconds));
+            return result == null ? 0 : result;
+        } catch (Exception e) {
+            log.debug("秒杀集群限流失败，放行", e);
+            return 0;
+        }
+    }
+
+    private static boolean reject(HttpServletResponse response) throws Exception {
+        response.setStatus(429);
+        response.setHeader("Retry-After", "1");
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(BUSY_RESPONSE);
+        return false;
+    }
+}
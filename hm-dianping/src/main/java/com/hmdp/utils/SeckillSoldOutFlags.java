@@ -0,0 +1,121 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀券售罄标记
+ * <p>
+ * 某个实例发现库存为0时在本地标记售罄，并通过redis的发布订阅通知其它实例，
+ * 之后的请求直接在进程内拒绝，不再访问redis和数据库；库存归还时广播取消标记。
+ * 标记在一段时间后失效，届时放一个请求去redis重新确认，消息丢失时最多影响这段时间
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutFlags implements MessageListener {
+
+    private static final String SOLD_OUT = "soldout:";
+    private static final String AVAILABLE = "available:";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${hmdp.seckill.sold-out.recheck-millis:1000}")
+    private long recheckMillis;
+
+    /**
+     * 优惠券id -> 标记的过期时间
+     */
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 判断优惠券是否已售罄，售罄时计入拒绝次数
+     *
+     * @param voucherId 优惠券id
+     * @return 标记存在且未过期时返回true
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            // 只让一个请求去重新确认，确认前其它请求仍然被拒绝
+            if (soldOut.replace(voucherId, expireAt, System.currentTimeMillis() + recheckMillis)) {
+                return false;
+            }
+        }
+        rejected.increment();
+        return true;
+    }
+
+    /**
+     * 标记售罄并通知其它实例
+     */
+    public void markSoldOut(Long voucherId) {
+        if (soldOut.put(voucherId, System.currentTimeMillis() + recheckMillis) == null) {
+            publish(SOLD_OUT + voucherId);
+        }
+    }
+
+    /**
+     * 库存归还或补充时取消标记并通知其它实例
+     */
+    public void markAvailable(Long voucherId) {
+        soldOut.remove(voucherId);
+        publish(AVAILABLE + voucherId);
+    }
+
+    /**
+     * 累计在进程内拒绝的请求数
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if (body.startsWith(SOLD_OUT)) {
+                soldOut.put(Long.valueOf(body.substring(SOLD_OUT.length())), System.currentTimeMillis() + recheckMillis);
+            } else if (body.startsWith(AVAILABLE)) {
+                soldOut.remove(Long.valueOf(body.substring(AVAILABLE.length())));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的售罄消息: {}", body);
+        }
+    }
+
+    private void publish(String body) {
+        try {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, body);
+        } catch (Exception e) {
+            // 通知失败不影响正确性，其它实例的标记会在重新确认时更新
+            log.warn("发送售罄消息失败: {}", body, e);
+        }
+    }
+}
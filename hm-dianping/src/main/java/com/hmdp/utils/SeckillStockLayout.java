@@ -0,0 +1,59 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.SeckillVoucherSegment;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀库存hash seckill:stock:{voucherId} 的字段布局，与seckill.lua的约定一致：
+ * 未分段时为 stock/begin/end；分段时没有stock字段，改为 segments 和 stock:0 ~ stock:{n-1}
+ */
+public final class SeckillStockLayout {
+
+    private SeckillStockLayout() {
+    }
+
+    /**
+     * 库存字段，只在不存在时写入，避免覆盖正在扣减的库存
+     *
+     * @param voucher  秒杀券
+     * @param segments 按分段号排序的库存分段，未分段时为空
+     */
+    public static Map<String, String> stockFields(SeckillVoucher voucher, List<SeckillVoucherSegment> segments) {
+        Map<String, String> fields = new HashMap<>(segments.size() * 4 / 3 + 1);
+        if (segments.isEmpty()) {
+            fields.put(SECKILL_STOCK_FIELD, voucher.getStock().toString());
+        }
+        for (SeckillVoucherSegment segment : segments) {
+            fields.put(SECKILL_SEGMENT_STOCK_FIELD + segment.getSegmentNo(), segment.getStock().toString());
+        }
+        return fields;
+    }
+
+    /**
+     * 秒杀时间和分段数，每次覆盖写入
+     *
+     * @param voucher  秒杀券
+     * @param segments 分段数，未分段时为0
+     */
+    public static Map<String, String> metaFields(SeckillVoucher voucher, int segments) {
+        Map<String, String> fields = new HashMap<>(4);
+        fields.put(SECKILL_BEGIN_FIELD, toEpochMilli(voucher.getBeginTime()));
+        fields.put(SECKILL_END_FIELD, toEpochMilli(voucher.getEndTime()));
+        if (segments > 0) {
+            fields.put(SECKILL_SEGMENTS_FIELD, String.valueOf(segments));
+        }
+        return fields;
+    }
+
+    private static String toEpochMilli(LocalDateTime time) {
+        return String.valueOf(time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+}
@@ -0,0 +1,150 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_KEY;
+
+/**
+ * 秒杀券元数据的本地缓存：秒杀时间和加载时的库存快照
+ * <p>
+ * 秒杀期间时间窗口不会变化，每次请求只需在内存中比较时间；库存快照只用于提前拒绝，真正的扣减仍以redis或数据库为准。
+ * 未命中时从数据库加载，不存在的id短时间缓存为空；新增或修改秒杀券后通过缓存失效频道通知所有实例清除(包括缓存的空值)，
+ * 条目过期后也会重新加载。条目数超过上限时先清除过期的条目，仍然超出时随机淘汰
+ */
+@Slf4j
+@Component
+public class SeckillVoucherCache implements MessageListener {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    @Value("${hmdp.seckill.voucher-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+    @Value("${hmdp.seckill.voucher-cache.null-ttl-seconds:5}")
+    private long nullTtlSeconds;
+    @Value("${hmdp.seckill.voucher-cache.max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<Long, Entry> cache = new ConcurrentHashMap<>();
+    /**
+     * 秒杀开始时大量请求同时未命中，只由一个线程查询数据库
+     */
+    private final SingleFlight singleFlight = new SingleFlight(TimeUnit.SECONDS.toMillis(3));
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 查询秒杀券，未命中或已过期时从数据库加载
+     *
+     * @param voucherId 优惠券id
+     * @return 秒杀券不存在时返回null
+     */
+    public SeckillVoucher get(Long voucherId) {
+        Entry entry = cache.get(voucherId);
+        if (entry != null && entry.expireAt >= System.currentTimeMillis()) {
+            return entry.voucher;
+        }
+        return singleFlight.execute(CACHE_SECKILL_VOUCHER_KEY + voucherId, () -> load(voucherId));
+    }
+
+    private SeckillVoucher load(Long voucherId) {
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        if (voucher != null) {
+            // 分段库存的快照为各分段之和，同时记下分段数，数据库扣减时不必再查询
+            seckillVoucherService.fillStock(voucher);
+            if (ensureCapacity()) {
+                cache.put(voucherId, new Entry(voucher, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds)));
+            }
+        } else if (cache.size() < maxEntries) {
+            // 不存在的id数量不受控制，缓存已满时不再缓存空值
+            cache.put(voucherId, new Entry(null, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(nullTtlSeconds)));
+        }
+        return voucher;
+    }
+
+    /**
+     * 条目数达到上限时腾出空间：先清除过期的条目，仍然没有空间时淘汰任意一个
+     *
+     * @return 是否可以写入新条目
+     */
+    private boolean ensureCapacity() {
+        if (cache.size() < maxEntries) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(entry -> entry.expireAt < now);
+        Iterator<Long> it = cache.keySet().iterator();
+        while (cache.size() >= maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        return cache.size() < maxEntries;
+    }
+
+    /**
+     * 秒杀券新增或修改后调用，通知所有实例清除缓存，在事务中调用时等事务提交后执行
+     */
+    public void invalidate(Long voucherId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 提交前清除的话，并发的请求可能又把旧数据加载回来
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(voucherId);
+                }
+            });
+        } else {
+            cache.remove(voucherId);
+        }
+        cacheInvalidator.invalidate(CACHE_SECKILL_VOUCHER_KEY + voucherId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!key.startsWith(CACHE_SECKILL_VOUCHER_KEY)) {
+            return;
+        }
+        try {
+            cache.remove(Long.valueOf(key.substring(CACHE_SECKILL_VOUCHER_KEY.length())));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的秒杀券失效消息: {}", key);
+        }
+    }
+
+    private static class Entry {
+        private final SeckillVoucher voucher;
+        private final long expireAt;
+
+        private Entry(SeckillVoucher voucher, long expireAt) {
+            this.voucher = voucher;
+            this.expireAt = expireAt;
+        }
+    }
+}
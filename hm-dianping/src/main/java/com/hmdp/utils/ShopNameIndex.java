@@ -0,0 +1,313 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+/**
+ * 商铺名称的进程内倒排索引，替代 like '%name%' 的全表扫描
+ * <p>
+ * 名称按字符切分为单字和相邻两字（bigram），中英文一视同仁，英文不区分大小写。
+ * 启动时分批从数据库构建；本实例新增、修改商铺时直接更新，
+ * 其它实例修改商铺时通过缓存失效频道收到通知后从数据库重新加载该商铺
+ */
+@Slf4j
+@Component
+public class ShopNameIndex implements ApplicationRunner, MessageListener {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+    /**
+     * 模糊匹配时至少命中的gram比例
+     */
+    private static final double MIN_COVERAGE = 0.5;
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    private final ExecutorService reindexExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "shop-name-reindex");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 已提交但尚未开始加载的商铺id，同一商铺的多次失效消息(例如延迟双删)只加载一次
+     */
+    private final Set<Long> pendingIds = ConcurrentHashMap.newKeySet();
+    /**
+     * 每次增删改加一，供依赖索引内容的组件判断是否需要重建
+     */
+    private final AtomicLong version = new AtomicLong();
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        reindexExecutor.shutdownNow();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long begin = System.currentTimeMillis();
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "name", "score", "sold", "comments")
+                    .gt("id", lastId).orderByAsc("id").last("limit " + LOAD_BATCH_SIZE));
+            if (shops.isEmpty()) {
+                break;
+            }
+            shops.forEach(this::index);
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+        ready = true;
+        log.info("商铺名称索引构建完成, 共{}个商铺, {}个gram, 耗时{}ms",
+                docs.size(), postings.size(), System.currentTimeMillis() - begin);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * 所有已索引的商铺，只读
+     */
+    public Collection<Doc> docs() {
+        return docs.values();
+    }
+
+    /**
+     * 新增或更新商铺的索引
+     *
+     * @param shop 至少包含id、name、score、sold、comments
+     */
+    public void index(Shop shop) {
+        if (shop == null || shop.getId() == null || shop.getName() == null) {
+            return;
+        }
+        Doc doc = new Doc(shop.getId(), shop.getName(), normalize(shop.getName()),
+                nullToZero(shop.getScore()), nullToZero(shop.getSold()), nullToZero(shop.getComments()));
+        Doc old = docs.put(doc.id, doc);
+        if (old != null && !old.normalized.equals(doc.normalized)) {
+            for (String gram : indexGrams(old.normalized)) {
+                Set<Long> ids = postings.get(gram);
+                if (ids != null) {
+                    ids.remove(doc.id);
+                }
+            }
+        }
+        for (String gram : indexGrams(doc.normalized)) {
+            postings.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(doc.id);
+        }
+        version.incrementAndGet();
+    }
+
+    public void remove(Long id) {
+        Doc old = docs.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String gram : indexGrams(old.normalized)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * 搜索商铺名称
+     * <p>
+     * 排序：包含完整关键字的优先（前缀匹配更优先），其次按命中gram的比例，再按评分、销量
+     *
+     * @param keyword 关键字
+     * @param offset  跳过的条数，为负数时返回空列表
+     * @param size    返回的条数
+     * @return 商铺id
+     */
+    public List<Long> search(String keyword, int offset, int size) {
+        String query = normalize(keyword);
+        Set<String> grams = grams(query);
+        if (grams.isEmpty() || offset < 0 || size <= 0) {
+            return new ArrayList<>();
+        }
+        // 统计每个商铺命中的gram数量
+        Map<Long, Integer> hits = new HashMap<>();
+        for (String gram : grams) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                for (Long id : ids) {
+                    hits.merge(id, 1, Integer::sum);
+                }
+            }
+        }
+        int minHits = grams.size() <= 2 ? grams.size() : (int) Math.ceil(grams.size() * MIN_COVERAGE);
+        List<Match> matches = new ArrayList<>();
+        hits.forEach((id, count) -> {
+            Doc doc = docs.get(id);
+            if (doc == null || count < minHits) {
+                return;
+            }
+            int position = doc.normalized.indexOf(query);
+            int exact = position == 0 ? 2 : (position > 0 ? 1 : 0);
+            matches.add(new Match(doc, exact, (double) count / grams.size()));
+        });
+        matches.sort(Comparator.comparingInt((Match m) -> m.exact).reversed()
+                .thenComparing(Comparator.comparingDouble((Match m) -> m.coverage).reversed())
+                .thenComparing(Comparator.comparingInt((Match m) -> m.doc.score).reversed())
+                .thenComparing(Comparator.comparingInt((Match m) -> m.doc.sold).reversed())
+                .thenComparingLong(m -> m.doc.id));
+        return matches.stream().skip(offset).limit(size).map(m -> m.doc.id).collect(Collectors.toList());
+    }
+
+    /**
+     * 其它实例修改商铺后会广播缓存失效消息，收到后重新加载该商铺的索引
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!key.startsWith(CACHE_SHOP_KEY)) {
+            return;
+        }
+        Long id;
+        try {
+            id = Long.valueOf(key.substring(CACHE_SHOP_KEY.length()));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (!pendingIds.add(id)) {
+            return;
+        }
+        try {
+            reindexExecutor.execute(() -> reindex(id));
+        } catch (RejectedExecutionException e) {
+            // 正在关闭
+            pendingIds.remove(id);
+        }
+    }
+
+    private void reindex(Long id) {
+        // 先移除再加载，加载期间收到的新消息会再次提交，不会丢失更新
+        pendingIds.remove(id);
+        try {
+            Shop shop = shopMapper.selectById(id);
+            if (shop == null) {
+                remove(id);
+            } else {
+                index(shop);
+            }
+        } catch (Exception e) {
+            log.error("商铺名称索引更新失败, id={}", id, e);
+        }
+    }
+
+    static String normalize(String text) {
+        return StrUtil.cleanBlank(text).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 查询时的切分：单个字的关键字用单字，否则用相邻两字
+     */
+    static Set<String> grams(String text) {
+        int[] codePoints = text.codePoints().toArray();
+        Set<String> grams = new LinkedHashSet<>();
+        if (codePoints.length == 1) {
+            grams.add(new String(codePoints, 0, 1));
+            return grams;
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            grams.add(new String(codePoints, i, 2));
+        }
+        return grams;
+    }
+
+    /**
+     * 单字索引在建索引时额外加入，查询时只有单字关键字会用到
+     */
+    private static Set<String> indexGrams(String text) {
+        Set<String> grams = grams(text);
+        text.codePoints().forEach(cp -> grams.add(new String(Character.toChars(cp))));
+        return grams;
+    }
+
+    private static int nullToZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * 索引中的商铺信息
+     */
+    public static class Doc {
+        public final Long id;
+        public final String name;
+        final String normalized;
+        public final int score;
+        public final int sold;
+        public final int comments;
+
+        Doc(Long id, String name, String normalized, int score, int sold, int comments) {
+            this.id = id;
+            this.name = name;
+            this.normalized = normalized;
+            this.score = score;
+            this.sold = sold;
+            this.comments = comments;
+        }
+    }
+
+    private static class Match {
+        private final Doc doc;
+        private final int exact;
+        private final double coverage;
+
+        Match(Doc doc, int exact, double coverage) {
+            this.doc = doc;
+            this.exact = exact;
+            this.coverage = coverage;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopSuggestion;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商铺名称前缀联想
+ * <p>
+ * 基于名称索引中的商铺构建前缀树，每个节点预先保存以该前缀开头、热度(销量+评论数)最高的前k个商铺，
+ * 查询只需沿前缀走到对应节点，与商铺总数无关。
+ * 前缀树构建后只读，压平为数组存储；名称索引变化后由后台线程定期整体重建并替换。
+ * 通过最多收录的商铺数限制内存，超出时只保留热度最高的商铺
+ */
+@Slf4j
+@Component
+public class ShopSuggester {
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
+    @Value("${hmdp.suggest.top-k:10}")
+    private int topK;
+    @Value("${hmdp.suggest.max-entries:200000}")
+    private int maxEntries;
+    @Value("${hmdp.suggest.rebuild-interval-seconds:5}")
+    private long rebuildIntervalSeconds;
+
+    private final ScheduledExecutorService rebuildExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "shop-suggest-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Trie trie;
+    private volatile long builtVersion = -1;
+
+    @PostConstruct
+    private void init() {
+        rebuildExecutor.scheduleWithFixedDelay(this::rebuildIfChanged,
+                rebuildIntervalSeconds, rebuildIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * 查询前缀联想
+     *
+     * @param prefix 前缀
+     * @return 热度从高到低的商铺，前缀树尚未构建时返回空
+     */
+    public List<ShopSuggestion> suggest(String prefix) {
+        Trie current = trie;
+        if (current == null || prefix == null) {
+            return Collections.emptyList();
+        }
+        String key = ShopNameIndex.normalize(prefix);
+        if (key.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return current.complete(key);
+    }
+
+    private void rebuildIfChanged() {
+        try {
+            long version = shopNameIndex.version();
+            if (!shopNameIndex.isReady() || version == builtVersion) {
+                return;
+            }
+            long begin = System.currentTimeMillis();
+            trie = build(new ArrayList<>(shopNameIndex.docs()));
+            builtVersion = version;
+            log.debug("商铺联想前缀树重建完成, {}个商铺, {}个节点, 耗时{}ms",
+                    trie.names.length, trie.labels.length, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("商铺联想前缀树重建失败", e);
+        }
+    }
+
+    private Trie build(List<ShopNameIndex.Doc> docs) {
+        // 按热度排序，超出上限的冷门商铺不收录；按此顺序插入，每个节点先收到的就是热度最高的
+        docs.sort(Comparator.comparingLong((ShopNameIndex.Doc d) -> (long) d.sold + d.comments).reversed()
+                .thenComparingLong(d -> d.id));
+        if (docs.size() > maxEntries) {
+            docs = docs.subList(0, maxEntries);
+        }
+        Node root = new Node();
+        int nodeCount = 1;
+        int topCount = 0;
+        for (int i = 0; i < docs.size(); i++) {
+            Node node = root;
+            for (char c : ShopNameIndex.normalize(docs.get(i).name).toCharArray()) {
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                    nodeCount++;
+                }
+                node = child;
+                if (node.top.size() < topK) {
+                    node.top.add(i);
+                    topCount++;
+                }
+            }
+        }
+        // 按层压平，同一节点的子节点连续存放且按字符有序，查找子节点时二分
+        Trie trie = new Trie(nodeCount, topCount, docs);
+        List<Node> queue = new ArrayList<>(nodeCount);
+        queue.add(root);
+        int next = 1;
+        int topPos = 0;
+        for (int i = 0; i < queue.size(); i++) {
+            Node node = queue.get(i);
+            trie.childStart[i] = next;
+            trie.childCount[i] = node.children.size();
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                trie.labels[next++] = entry.getKey();
+                queue.add(entry.getValue());
+            }
+            trie.topStart[i] = topPos;
+            for (Integer entry : node.top) {
+                trie.top[topPos++] = entry;
+            }
+            // 释放临时节点，降低重建时的内存峰值
+            queue.set(i, null);
+        }
+        trie.topStart[nodeCount] = topPos;
+        return trie;
+    }
+
+    /**
+     * 构建过程中使用的临时节点
+     */
+    private static class Node {
+        private final TreeMap<Character, Node> children = new TreeMap<>();
+        private final List<Integer> top = new ArrayList<>(2);
+    }
+
+    /**
+     * 压平后的只读前缀树，节点0为根节点
+     */
+    private static class Trie {
+        private final char[] labels;
+        private final int[] childStart;
+        private final int[] childCount;
+        private final int[] topStart;
+        private final int[] top;
+        private final long[] ids;
+        private final String[] names;
+
+        Trie(int nodeCount, int topCount, List<ShopNameIndex.Doc> docs) {
+            labels = new char[nodeCount];
+            childStart = new int[nodeCount];
+            childCount = new int[nodeCount];
+            topStart = new int[nodeCount + 1];
+            top = new int[topCount];
+            ids = new long[docs.size()];
+            names = new String[docs.size()];
+            for (int i = 0; i < docs.size(); i++) {
+                ids[i] = docs.get(i).id;
+                names[i] = docs.get(i).name;
+            }
+        }
+
+        List<ShopSuggestion> complete(String prefix) {
+            int node = 0;
+            for (int i = 0; i < prefix.length() && node >= 0; i++) {
+                node = child(node, prefix.charAt(i));
+            }
+            if (node < 0) {
+                return Collections.emptyList();
+            }
+            List<ShopSuggestion> result = new ArrayList<>(topStart[node + 1] - topStart[node]);
+            for (int i = topStart[node]; i < topStart[node + 1]; i++) {
+                result.add(new ShopSuggestion(ids[top[i]], names[top[i]]));
+            }
+            return result;
+        }
+
+        private int child(int node, char c) {
+            int low = childStart[node];
+            int high = low + childCount[node] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (labels[mid] < c) {
+                    low = mid + 1;
+                } else if (labels[mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+}
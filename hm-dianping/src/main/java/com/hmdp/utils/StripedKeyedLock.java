@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单机的分段锁：固定数量的ReentrantLock，key按哈希映射到其中一把
+ * <p>
+ * 不同的key可能共用一把锁，只会多一些等待，不影响正确性；
+ * 只在本实例内有效，多实例部署时需要使用分布式锁
+ */
+public class StripedKeyedLock implements KeyedLock {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes 锁的数量，向上取整为2的幂
+     */
+    public StripedKeyedLock(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    @Override
+    public Lock getLock(String key) {
+        return locks[(int) BloomFilter.mix64(key.hashCode()) & mask];
+    }
+}
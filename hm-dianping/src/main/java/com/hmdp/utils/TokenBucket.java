@@ -0,0 +1,48 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ * <p>
+ * 不保存令牌数，只保存"理论上下一个令牌产生的时间"：每取一个令牌向后推一个间隔，
+ * 该时间超前当前时间不超过桶容量对应的时长时允许取令牌，效果等同于容量为burst、速率为permitsPerSecond的令牌桶
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong nextFreeNanos;
+
+    /**
+     * @param permitsPerSecond 每秒产生的令牌数
+     * @param burst            桶容量，允许的突发请求数
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.nextFreeNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 尝试取一个令牌，不等待
+     *
+     * @return 没有令牌时返回false
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long next = nextFreeNanos.get();
+            // 长时间没有请求时，从当前时间开始计算，桶最多积满burst个令牌
+            long base = Math.max(next, now);
+            long updated = base + intervalNanos;
+            if (updated - now > burstNanos) {
+                return false;
+            }
+            if (nextFreeNanos.compareAndSet(next, updated)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.hmdp.utils;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 缓存过期时间策略
+ * <p>
+ * 按key前缀划分缓存族，每个族可以单独配置TTL(分钟)，未配置时使用代码中的默认值，调用方通过 {@link #minutes} 取得；
+ * 调用方显式传入的TTL(例如管理接口指定的过期时间)不受配置影响。
+ * 实际写入的TTL在基础值上随机增加 0 ~ jitter 比例的时间，避免同一批写入的key同时过期。
+ * 同时按分钟抽样统计每个族写入的过期时间分布，用于确认过期时间已经打散
+ */
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache.ttl")
+public class TtlPolicy {
+
+    private static final DateTimeFormatter MINUTE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    /**
+     * 随机增加的比例
+     */
+    @Getter
+    @Setter
+    private double jitter = 0.1;
+    /**
+     * 各缓存族的TTL，分钟，key为缓存族名称
+     */
+    @Getter
+    @Setter
+    private Map<String, Long> minutes = new HashMap<>();
+    /**
+     * 过期时间分布的抽样比例，登录刷新等每个请求都会计算TTL，不逐次统计
+     */
+    @Getter
+    @Setter
+    private double histogramSampleRate = 0.1;
+
+    private final Map<Family, ConcurrentSkipListMap<Long, LongAdder>> histogram = new LinkedHashMap<>();
+
+    public TtlPolicy() {
+        for (Family family : Family.values()) {
+            histogram.put(family, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /**
+     * 缓存族
+     */
+    public enum Family {
+        SHOP("shop", CACHE_SHOP_KEY, CACHE_SHOP_TTL),
+        SHOP_TYPE("shop-type", CACHE_SHOP_TYPE_KEY, CACHE_SHOP_TYPE_TTL),
+        SHOP_VOUCHER("voucher", CACHE_SHOP_VOUCHER_KEY, CACHE_SHOP_VOUCHER_TTL),
+        BLOG("blog", CACHE_BLOG_KEY, CACHE_BLOG_TTL),
+        USER("user", CACHE_USER_KEY, CACHE_USER_TTL),
+        LOGIN_USER("login", LOGIN_USER_KEY, LOGIN_USER_TTL),
+        NULL("null", null, CACHE_NULL_TTL),
+        OTHER("other", null, null);
+
+        private final String name;
+        private final String keyPrefix;
+        private final Long defaultMinutes;
+
+        Family(String name, String keyPrefix, Long defaultMinutes) {
+            this.name = name;
+            this.keyPrefix = keyPrefix;
+            this.defaultMinutes = defaultMinutes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        static Family of(String key) {
+            for (Family family : values()) {
+                if (family.keyPrefix != null && key.startsWith(family.keyPrefix)) {
+                    return family;
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    /**
+     * 缓存族的基础TTL，优先使用配置
+     *
+     * @param family 缓存族
+     * @return 分钟
+     */
+    public long minutes(Family family) {
+        Long configured = minutes.getOrDefault(family.name, family.defaultMinutes);
+        return configured == null ? 0 : configured;
+    }
+
+    /**
+     * 计算key的TTL
+     *
+     * @param key  缓存key，按前缀确定缓存族
+     * @param time 调用方指定的基础TTL，使用缓存族的TTL时传入 {@link #minutes} 的结果
+     * @param unit 时间单位
+     * @return 加上随机时间后的TTL，秒
+     */
+    public long ttlSeconds(String key, long time, TimeUnit unit) {
+        return jittered(Family.of(key), unit.toSeconds(time));
+    }
+
+    /**
+     * 计算缓存族的TTL
+     *
+     * @param family 缓存族
+     * @return 加上随机时间后的TTL，秒
+     */
+    public long ttlSeconds(Family family) {
+        return jittered(family, TimeUnit.MINUTES.toSeconds(minutes(family)));
+    }
+
+    /**
+     * 计算空值缓存的TTL
+     *
+     * @return 加上随机时间后的TTL，秒
+     */
+    public long nullTtlSeconds() {
+        return ttlSeconds(Family.NULL);
+    }
+
+    /**
+     * 各缓存族未来每分钟将要过期的写入次数(按抽样比例估算)，已经过去的分钟不再展示
+     *
+     * @return 缓存族名称 -> (分钟 -> 次数)
+     */
+    public Map<String, Map<String, Long>> expiryHistogram() {
+        long nowMinute = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        histogram.forEach((family, buckets) -> {
+            buckets.headMap(nowMinute).clear();
+            if (buckets.isEmpty()) {
+                return;
+            }
+            Map<String, Long> counts = new LinkedHashMap<>();
+            buckets.forEach((minute, count) -> counts.put(format(minute), count.sum()));
+            result.put(family.name, counts);
+        });
+        return result;
+    }
+
+    private long jittered(Family family, long seconds) {
+        long extra = (long) (seconds * jitter);
+        long ttl = extra > 0 ? seconds + ThreadLocalRandom.current().nextLong(extra + 1) : seconds;
+        if (histogramSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= histogramSampleRate) {
+            return ttl;
+        }
+        ConcurrentSkipListMap<Long, LongAdder> buckets = histogram.get(family);
+        long now = System.currentTimeMillis();
+        long expireMinute = TimeUnit.MILLISECONDS.toMinutes(now + TimeUnit.SECONDS.toMillis(ttl));
+        // 每个样本代表 1 / 抽样比例 次写入
+        buckets.computeIfAbsent(expireMinute, k -> new LongAdder()).add(Math.max(1, Math.round(1 / histogramSampleRate)));
+        // 顺带清理已经过去的分钟
+        Long first = buckets.firstKey();
+        if (first < TimeUnit.MILLISECONDS.toMinutes(now)) {
+            buckets.headMap(TimeUnit.MILLISECONDS.toMinutes(now)).clear();
+        }
+        return ttl;
+    }
+
+    private static String format(long epochMinute) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(TimeUnit.MINUTES.toSeconds(epochMinute)),
+                ZoneId.systemDefault()).format(MINUTE_FORMATTER);
+    }
+}
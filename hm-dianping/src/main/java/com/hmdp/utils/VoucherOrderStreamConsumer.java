@@ -0,0 +1,324 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
+
+/**
+ * 秒杀订单stream的消费者
+ * <p>
+ * 秒杀脚本在判断资格的同时把订单写入redis stream，每个实例作为消费者组中的一个消费者，
+ * 批量读取订单、写入数据库后再确认(XACK)，实例宕机时订单仍留在stream中。
+ * 恢复线程定期检查pending-list，把空闲超过一定时间(消费者可能已经宕机)的消息转给自己(XCLAIM)后重新写入。
+ * 订单写入是幂等的(订单id主键和用户、优惠券唯一索引)，重复消费不会重复下单。
+ * 数据库暂时不可用时写入失败的订单不确认也不回滚，留在pending-list中由恢复线程稍后重新写入，
+ * 只有数据错误等无法重试的订单，以及投递次数超过上限的订单，才记录失败、归还资格后确认
+ */
+@Slf4j
+@Component
+public class VoucherOrderStreamConsumer {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private VoucherOrderWriter voucherOrderWriter;
+
+    @Value("${hmdp.seckill.order-queue:stream}")
+    private String orderQueue;
+    @Value("${hmdp.seckill.stream.batch-size:100}")
+    private int batchSize;
+    @Value("${hmdp.seckill.stream.block-millis:2000}")
+    private long blockMillis;
+    @Value("${hmdp.seckill.stream.claim-idle-millis:60000}")
+    private long claimIdleMillis;
+    @Value("${hmdp.seckill.stream.recover-interval-millis:10000}")
+    private long recoverIntervalMillis;
+    @Value("${hmdp.seckill.stream.max-deliveries:30}")
+    private long maxDeliveries;
+    @Value("${hmdp.seckill.stream.dead-consumer-idle-millis:3600000}")
+    private long deadConsumerIdleMillis;
+
+    private final String consumerName = consumerName();
+    private final ScheduledExecutorService recoverExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "voucher-order-recover");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Thread readerThread;
+    private volatile boolean running = true;
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong claimed = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        createGroup();
+        readerThread = new Thread(this::consume, "voucher-order-consumer");
+        readerThread.start();
+        recoverExecutor.scheduleWithFixedDelay(this::recover,
+                recoverIntervalMillis, recoverIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        recoverExecutor.shutdownNow();
+        if (readerThread != null) {
+            // 等待正在写入的一批完成并确认，未确认的消息由其它实例接管
+            readerThread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    /**
+     * 订单是否通过stream写入，否则使用进程内队列
+     */
+    public boolean isEnabled() {
+        return "stream".equalsIgnoreCase(orderQueue);
+    }
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    public long consumed() {
+        return consumed.get();
+    }
+
+    public long claimed() {
+        return claimed.get();
+    }
+
+    /**
+     * 创建消费者组，stream不存在时一并创建，组已存在时忽略
+     */
+    private void createGroup() {
+        try {
+            stringRedisTemplate.execute(connection -> connection.streamCommands().xGroupCreate(
+                    SECKILL_ORDER_STREAM_KEY.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP,
+                    ReadOffset.from("0"), true), true);
+        } catch (Exception e) {
+            if (!StrUtil.contains(e.getMessage(), "BUSYGROUP")
+                    && !(e.getCause() != null && StrUtil.contains(e.getCause().getMessage(), "BUSYGROUP"))) {
+                throw e;
+            }
+        }
+    }
+
+    private void consume() {
+        Consumer consumer = Consumer.from(SECKILL_ORDER_GROUP, consumerName);
+        StreamReadOptions options = StreamReadOptions.empty()
+                .count(batchSize).block(Duration.ofMillis(blockMillis));
+        while (running) {
+            try {
+                // XREADGROUP GROUP order-writers {consumer} COUNT n BLOCK 2000 STREAMS stream.orders >
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                        .read(consumer, options, StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.lastConsumed()));
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                List<RecordId> ids = new ArrayList<>(records.size());
+                List<Map<Object, Object>> values = new ArrayList<>(records.size());
+                for (MapRecord<String, Object, Object> record : records) {
+                    ids.add(record.getId());
+                    values.add(record.getValue());
+                }
+                int deferred = handle(ids, values, true);
+                consumed.addAndGet(ids.size() - deferred);
+                if (deferred > 0) {
+                    // 数据库暂时不可用，稍等再读，未写入的消息由恢复线程重新写入
+                    sleepQuietly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("读取秒杀订单stream异常", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    private void recover() {
+        claimPending();
+        removeDeadConsumers();
+    }
+
+    /**
+     * 接管空闲过久的pending消息并重新写入
+     */
+    private void claimPending() {
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(
+                    SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, Range.unbounded(), batchSize);
+            if (pending == null || pending.isEmpty()) {
+                return;
+            }
+            Duration minIdle = Duration.ofMillis(claimIdleMillis);
+            List<RecordId> idle = new ArrayList<>();
+            Set<RecordId> exhausted = new HashSet<>();
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                    idle.add(message.getId());
+                    if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                        exhausted.add(message.getId());
+                    }
+                }
+            }
+            if (idle.isEmpty()) {
+                return;
+            }
+            // XCLAIM只会转移仍然空闲超过minIdle的消息，多个实例同时恢复时同一条消息只会被一个实例拿到
+            List<ByteRecord> records = stringRedisTemplate.execute(connection -> connection.streamCommands().xClaim(
+                    SECKILL_ORDER_STREAM_KEY.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, consumerName,
+                    minIdle, idle.toArray(new RecordId[0])), true);
+            if (records == null || records.isEmpty()) {
+                return;
+            }
+            List<RecordId> ids = new ArrayList<>(records.size());
+            List<Map<Object, Object>> values = new ArrayList<>(records.size());
+            List<RecordId> exhaustedIds = new ArrayList<>();
+            List<Map<Object, Object>> exhaustedValues = new ArrayList<>();
+            for (ByteRecord record : records) {
+                Map<Object, Object> value = new HashMap<>(4);
+                record.getValue().forEach((field, v) -> value.put(
+                        new String(field, StandardCharsets.UTF_8), new String(v, StandardCharsets.UTF_8)));
+                if (exhausted.contains(record.getId())) {
+                    exhaustedIds.add(record.getId());
+                    exhaustedValues.add(value);
+                } else {
+                    ids.add(record.getId());
+                    values.add(value);
+                }
+            }
+            int deferred = ids.isEmpty() ? 0 : handle(ids, values, true);
+            if (!exhaustedIds.isEmpty()) {
+                // 投递次数超过上限，不再等待，写入仍失败时记录失败并归还资格
+                log.warn("{}条秒杀订单投递次数超过{}次, 最后一次写入", exhaustedIds.size(), maxDeliveries);
+                handle(exhaustedIds, exhaustedValues, false);
+            }
+            claimed.addAndGet(records.size() - deferred);
+            log.info("接管{}条未确认的秒杀订单, 其中{}条暂时无法写入", records.size(), deferred);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("恢复秒杀订单stream的pending消息失败", e);
+        }
+    }
+
+    /**
+     * 每次启动使用新的消费者名字，宕机或重启后旧的消费者留在组里。
+     * 它的pending消息被接管后，空闲超过一定时间且没有pending消息的消费者从组中删除(XGROUP DELCONSUMER)，
+     * 存活的消费者每次阻塞读取都会刷新空闲时间，即使被误删，下次读取时也会自动重新加入
+     */
+    private void removeDeadConsumers() {
+        try {
+            StreamInfo.XInfoConsumers consumers = stringRedisTemplate.opsForStream()
+                    .consumers(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP);
+            if (consumers == null) {
+                return;
+            }
+            consumers.forEach(consumer -> {
+                if (consumerName.equals(consumer.consumerName())
+                        || consumer.pendingCount() > 0 || consumer.idleTimeMs() < deadConsumerIdleMillis) {
+                    return;
+                }
+                stringRedisTemplate.opsForStream().deleteConsumer(SECKILL_ORDER_STREAM_KEY,
+                        Consumer.from(SECKILL_ORDER_GROUP, consumer.consumerName()));
+                log.info("删除空闲{}ms的秒杀订单消费者: {}", consumer.idleTimeMs(), consumer.consumerName());
+            });
+        } catch (Exception e) {
+            log.warn("清理秒杀订单stream的消费者失败", e);
+        }
+    }
+
+    /**
+     * 写入订单后确认消息，无法解析的消息记录日志后直接确认，避免反复投递
+     *
+     * @param retryLater 为true时，因暂时性异常写入失败的订单不确认，留在pending-list中稍后重新写入
+     * @return 未确认的消息数
+     */
+    private int handle(List<RecordId> ids, List<Map<Object, Object>> values, boolean retryLater) throws InterruptedException {
+        List<VoucherOrder> orders = new ArrayList<>(values.size());
+        Map<Long, RecordId> recordIds = new HashMap<>(values.size() * 2);
+        for (int i = 0; i < values.size(); i++) {
+            try {
+                VoucherOrder order = BeanUtil.fillBeanWithMap(values.get(i), new VoucherOrder(), true);
+                orders.add(order);
+                recordIds.put(order.getId(), ids.get(i));
+            } catch (Exception e) {
+                log.error("无法解析的秒杀订单消息, id={}, value={}", ids.get(i), values.get(i), e);
+            }
+        }
+        Set<RecordId> deferred = new HashSet<>();
+        if (!orders.isEmpty()) {
+            // 返回的订单未写入也未回滚，其余订单都已写入或交给失败回调归还资格
+            for (VoucherOrder order : voucherOrderWriter.writeBatch(orders, retryLater)) {
+                deferred.add(recordIds.get(order.getId()));
+            }
+        }
+        List<RecordId> acked = ids.stream().filter(id -> !deferred.contains(id)).collect(Collectors.toList());
+        if (!acked.isEmpty()) {
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP,
+                    acked.toArray(new RecordId[0]));
+        }
+        return ids.size() - acked.size();
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String consumerName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        // 每次启动使用新的名字，上次启动遗留的pending消息由恢复线程接管
+        return host + "-" + IdUtil.simpleUUID().substring(0, 8);
+    }
+}
@@ -0,0 +1,319 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.SeckillVoucherSegment;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.SeckillVoucherSegmentMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_FAILED_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_FAILED_TTL;
+
+/**
+ * 秒杀订单异步写入
+ * <p>
+ * 获得秒杀资格的订单放入有界队列后立即返回，由单独的线程批量取出，
+ * 按优惠券分组执行多行插入，并按实际插入的行数一次性扣减库存，每批一个小事务。
+ * 一批写入失败时重试，仍失败则逐条写入，单条也失败的订单记录为失败状态(供用户查询)后交给失败回调处理。
+ * 因用户已有订单而被忽略的重复订单交给重复回调，归还其占用的redis库存。
+ * 订单走redis stream时，队列不再使用，由stream的消费者直接调用批量写入，
+ * 因暂时性异常写入失败的订单不回滚，留在stream中稍后重新写入
+ */
+@Slf4j
+@Component
+public class VoucherOrderWriter implements MetricsSource {
+
+    @Resource
+    private VoucherOrderMapper voucherOrderMapper;
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+    @Resource
+    private SeckillVoucherSegmentMapper seckillVoucherSegmentMapper;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.seckill.writer.queue-capacity:10000}")
+    private int queueCapacity;
+    @Value("${hmdp.seckill.writer.batch-size:200}")
+    private int batchSize;
+    @Value("${hmdp.seckill.writer.linger-millis:10}")
+    private long lingerMillis;
+    @Value("${hmdp.seckill.writer.max-retries:3}")
+    private int maxRetries;
+
+    private BlockingQueue<VoucherOrder> queue;
+    private Thread writerThread;
+    private volatile boolean running = true;
+    private volatile Consumer<VoucherOrder> failureHandler = order -> { };
+    private volatile Consumer<VoucherOrder> duplicateHandler = order -> { };
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writerThread = new Thread(this::drain, "voucher-order-writer");
+        writerThread.start();
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        // 停止接收新订单，等待队列中的订单写完
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        if (!queue.isEmpty()) {
+            log.error("关闭时仍有{}个秒杀订单未写入", queue.size());
+        }
+    }
+
+    /**
+     * 提交订单
+     *
+     * @param order 订单
+     * @return 队列已满或正在关闭时返回false，调用方应拒绝本次请求
+     */
+    public boolean submit(VoucherOrder order) {
+        return running && queue.offer(order);
+    }
+
+    /**
+     * 设置订单最终写入失败时的处理，例如归还redis中的库存
+     */
+    public void onFailure(Consumer<VoucherOrder> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * 设置重复订单(用户已经有该优惠券的订单)被忽略时的处理，例如归还redis中多扣的库存
+     */
+    public void onDuplicate(Consumer<VoucherOrder> duplicateHandler) {
+        this.duplicateHandler = duplicateHandler;
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter out) {
+        out.header("hmdp_seckill_orders_total", "Seckill orders processed by the order writer.", "counter")
+                .sample("hmdp_seckill_orders_total", "result=\"written\"", written())
+                .sample("hmdp_seckill_orders_total", "result=\"duplicate\"", duplicates())
+                .sample("hmdp_seckill_orders_total", "result=\"failed\"", failed());
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    private void drain() {
+        List<VoucherOrder> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                VoucherOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 等待一小段时间凑满一批
+                long deadline = System.currentTimeMillis() + lingerMillis;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || wait <= 0) {
+                        break;
+                    }
+                    VoucherOrder next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("秒杀订单写入线程异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 同步写入一批订单，失败时重试，最终失败的订单交给失败回调，方法返回时每个订单都已处理完毕
+     *
+     * @param batch 订单
+     */
+    public void writeBatch(List<VoucherOrder> batch) throws InterruptedException {
+        writeBatch(batch, false);
+    }
+
+    /**
+     * 同步写入一批订单，失败时重试，仍失败则逐条写入
+     *
+     * @param batch      订单
+     * @param retryLater 为true时，因暂时性异常(如数据库不可用)写入失败的订单不回滚，原样返回，由调用方稍后重新写入；
+     *                   数据错误等重试也无法成功的订单仍然记录失败并交给失败回调
+     * @return 留待稍后重新写入的订单，retryLater为false时总是空列表
+     */
+    public List<VoucherOrder> writeBatch(List<VoucherOrder> batch, boolean retryLater) throws InterruptedException {
+        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            try {
+                afterPersist(batch, persist(batch));
+                return Collections.emptyList();
+            } catch (Exception e) {
+                log.warn("秒杀订单批量写入失败, 第{}次, 共{}条", attempt, batch.size(), e);
+                if (isPermanent(e)) {
+                    // 数据错误重试也不会成功，直接逐条写入找出坏数据
+                    break;
+                }
+                Thread.sleep(100L * attempt);
+            }
+        }
+        // 整批重试仍失败，逐条写入，避免一条坏数据拖累整批
+        for (int i = 0; i < batch.size(); i++) {
+            VoucherOrder order = batch.get(i);
+            List<VoucherOrder> single = Collections.singletonList(order);
+            try {
+                afterPersist(single, persist(single));
+            } catch (Exception e) {
+                if (retryLater && !isPermanent(e)) {
+                    // 数据库仍不可用，剩下的订单也不必再试
+                    log.warn("秒杀订单暂时无法写入, 留待稍后重试, 共{}条", batch.size() - i, e);
+                    return new ArrayList<>(batch.subList(i, batch.size()));
+                }
+                fail(order, e);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 是否为重试也无法成功的异常：约束冲突、sql错误等数据错误，以及库存不足；
+     * 连接失败、锁超时等其它异常视为暂时性的
+     */
+    private static boolean isPermanent(Exception e) {
+        if (e instanceof IllegalStateException) {
+            return true;
+        }
+        return e instanceof NonTransientDataAccessException && !(e instanceof NonTransientDataAccessResourceException);
+    }
+
+    /**
+     * 订单最终写入失败：记录失败状态，用户查询订单时能看到，再交给失败回调
+     */
+    private void fail(VoucherOrder order, Exception e) {
+        failed.incrementAndGet();
+        log.error("秒杀订单写入失败, order={}", order, e);
+        try {
+            stringRedisTemplate.opsForValue().set(SECKILL_ORDER_FAILED_KEY + order.getId(),
+                    order.getUserId().toString(), SECKILL_ORDER_FAILED_TTL, TimeUnit.HOURS);
+        } catch (Exception ex) {
+            log.error("记录秒杀订单失败状态失败, orderId={}", order.getId(), ex);
+        }
+        failureHandler.accept(order);
+    }
+
+    private void afterPersist(List<VoucherOrder> batch, List<VoucherOrder> ignored) {
+        written.addAndGet(batch.size() - ignored.size());
+        for (VoucherOrder order : ignored) {
+            duplicates.incrementAndGet();
+            log.warn("忽略重复的秒杀订单, order={}", order);
+            duplicateHandler.accept(order);
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批订单：按优惠券和库存分段分组多行插入，按实际插入的行数扣减库存
+     *
+     * @return 因用户已有订单而被忽略的订单；重复投递的同一订单(订单id已存在)不在其中
+     */
+    private List<VoucherOrder> persist(List<VoucherOrder> orders) {
+        Map<Long, Map<Integer, List<VoucherOrder>>> byVoucher = new LinkedHashMap<>();
+        for (VoucherOrder order : orders) {
+            int segment = order.getSegment() == null ? -1 : order.getSegment();
+            byVoucher.computeIfAbsent(order.getVoucherId(), k -> new LinkedHashMap<>())
+                    .computeIfAbsent(segment, k -> new ArrayList<>()).add(order);
+        }
+        List<VoucherOrder> ignored = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> byVoucher.forEach((voucherId, bySegment) ->
+                bySegment.forEach((segment, list) -> {
+                    // 重复的订单(同一用户同一优惠券)被忽略，不扣库存
+                    int inserted = voucherOrderMapper.insertIgnoreBatch(list);
+                    if (inserted < list.size()) {
+                        ignored.addAll(findIgnored(list));
+                    }
+                    if (inserted == 0) {
+                        return;
+                    }
+                    if (deductStock(voucherId, segment, inserted) == 0) {
+                        throw new IllegalStateException("库存不足, voucherId=" + voucherId + ", segment=" + segment);
+                    }
+                })));
+        return ignored;
+    }
+
+    /**
+     * 找出被忽略的订单：订单id不存在说明是同一用户的另一笔订单占了唯一索引
+     */
+    private List<VoucherOrder> findIgnored(List<VoucherOrder> orders) {
+        List<Long> ids = orders.stream().map(VoucherOrder::getId).collect(Collectors.toList());
+        Set<Long> existing = voucherOrderMapper.selectObjs(new QueryWrapper<VoucherOrder>().select("id").in("id", ids))
+                .stream().map(o -> ((Number) o).longValue()).collect(Collectors.toSet());
+        return orders.stream().filter(o -> !existing.contains(o.getId())).collect(Collectors.toList());
+    }
+
+    private int deductStock(Long voucherId, int segment, int count) {
+        if (segment < 0) {
+            return seckillVoucherMapper.update(null, new UpdateWrapper<SeckillVoucher>()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", voucherId)
+                    .ge("stock", count));
+        }
+        // 分段库存只锁对应分段的行
+        return seckillVoucherSegmentMapper.update(null, new UpdateWrapper<SeckillVoucherSegment>()
+                .setSql("stock = stock - " + count)
+                .eq("voucher_id", voucherId)
+                .eq("segment_no", segment)
+                .ge("stock", count));
+    }
+}
@@ -0,0 +1,54 @@
+-- 秒杀资格判断：时间窗口、库存、一人一单，通过后扣减库存并记录用户
+-- KEYS[1] 库存hash seckill:stock:{voucherId}，字段 stock/begin/end(毫秒时间戳)；
+--         库存分段时没有stock字段，改为 segments(分段数) 和 stock:0 ~ stock:{n-1}
+-- KEYS[2] 已下单用户set seckill:stock:{voucherId}:users
+-- KEYS[3] 已获得资格的订单 seckill:order:admitted:{orderId}，值为用户id，用于查询订单状态
+-- KEYS[4] 可选，订单stream，传入时在同一个脚本中写入订单消息
+-- ARGV[1] 用户id  ARGV[2] 当前时间毫秒  ARGV[3] 优惠券id  ARGV[4] 订单id  ARGV[5] stream的大致长度上限
+-- ARGV[6] 首选的分段(按用户哈希)，该分段库存为0时依次尝试其它分段  ARGV[7] KEYS[3]的过期时间(秒)
+-- 返回 {结果, 分段}，结果 0：成功 1：秒杀券不存在 2：未开始 3：已结束 4：库存不足 5：重复下单；未分段时分段为-1
+local stockKey = KEYS[1]
+local usersKey = KEYS[2]
+local userId = ARGV[1]
+local now = tonumber(ARGV[2])
+
+local voucher = redis.call('hmget', stockKey, 'stock', 'begin', 'end', 'segments')
+if not voucher[1] and not voucher[4] then
+    return {1, -1}
+end
+if voucher[2] and now < tonumber(voucher[2]) then
+    return {2, -1}
+end
+if voucher[3] and now > tonumber(voucher[3]) then
+    return {3, -1}
+end
+local segment = -1
+local stockField = 'stock'
+if voucher[4] then
+    local n = tonumber(voucher[4])
+    local start = tonumber(ARGV[6]) % n
+    for i = 0, n - 1 do
+        local s = (start + i) % n
+        if tonumber(redis.call('hget', stockKey, 'stock:' .. s) or '0') > 0 then
+            segment = s
+            break
+        end
+    end
+    if segment < 0 then
+        return {4, -1}
+    end
+    stockField = 'stock:' .. segment
+elseif tonumber(voucher[1]) <= 0 then
+    return {4, -1}
+end
+if redis.call('sismember', usersKey, userId) == 1 then
+    return {5, -1}
+end
+redis.call('hincrby', stockKey, stockField, -1)
+redis.call('sadd', usersKey, userId)
+redis.call('set', KEYS[3], userId, 'EX', ARGV[7])
+if #KEYS >= 4 then
+    redis.call('xadd', KEYS[4], 'MAXLEN', '~', ARGV[5], '*',
+            'id', ARGV[4], 'userId', userId, 'voucherId', ARGV[3], 'segment', segment)
+end
+return {0, segment}
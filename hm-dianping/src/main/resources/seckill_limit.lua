@@ -0,0 +1,21 @@
+-- 秒杀请求的集群限流：按秒计数的全局限流 + 按固定窗口计数的用户限流
+-- KEYS[1] 全局计数key limit:seckill:{秒}  KEYS[2] 用户计数key limit:seckill:user:{userId}
+-- ARGV[1] 每秒全局上限，小于等于0时不限制  ARGV[2] 用户每个窗口的上限  ARGV[3] 用户窗口的秒数
+-- 返回 0：通过 1：超过全局限制 2：超过用户限制
+local userCount = redis.call('incr', KEYS[2])
+if userCount == 1 then
+    redis.call('expire', KEYS[2], ARGV[3])
+end
+if userCount > tonumber(ARGV[2]) then
+    return 2
+end
+if tonumber(ARGV[1]) > 0 then
+    local total = redis.call('incr', KEYS[1])
+    if total == 1 then
+        redis.call('expire', KEYS[1], 2)
+    end
+    if total > tonumber(ARGV[1]) then
+        return 1
+    end
+end
+return 0
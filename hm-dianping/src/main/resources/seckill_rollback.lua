@@ -0,0 +1,13 @@
+-- 下单失败时归还秒杀资格：库存加回并移除用户
+-- KEYS[1] 库存hash  KEYS[2] 已下单用户set  ARGV[1] 用户id  ARGV[2] 扣减库存的分段，未分段时为-1
+-- 返回 1：已归还 0：用户没有占用资格
+if redis.call('srem', KEYS[2], ARGV[1]) == 1 then
+    local segment = tonumber(ARGV[2] or '-1')
+    local field = 'stock'
+    if segment >= 0 then
+        field = 'stock:' .. segment
+    end
+    redis.call('hincrby', KEYS[1], field, 1)
+    return 1
+end
+return 0
@@ -0,0 +1,80 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+
+import java.time.LocalDateTime;
+
+/**
+ * 比较两种缓存编码的大小和编解码耗时，不属于单元测试，手动运行：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.hmdp.utils.CacheCodecBenchmark
+ * </pre>
+ * 每种编码先预热，再取多轮测量中的最小值，减少JIT和GC的干扰
+ */
+public class CacheCodecBenchmark {
+
+    private static final int WARM_UP_ITERATIONS = 200_000;
+    private static final int ITERATIONS = 200_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * 防止编解码结果被JIT当作无用代码消除
+     */
+    private static long sink;
+
+    public static void main(String[] args) {
+        RedisData redisData = new RedisData();
+        redisData.setData(shop());
+        redisData.setExpireTime(LocalDateTime.of(2022, 1, 1, 12, 30, 15));
+        redisData.setRebuildMillis(12L);
+
+        CacheCodec json = new JsonCacheCodec();
+        CacheCodec binary = new BinaryCacheCodec();
+        double jsonNanos = measure(json, redisData);
+        double binaryNanos = measure(binary, redisData);
+        System.out.printf("json:   %d bytes, %.0f ns/op%n", json.encode(redisData).length, jsonNanos);
+        System.out.printf("binary: %d bytes, %.0f ns/op%n", binary.encode(redisData).length, binaryNanos);
+        System.out.printf("speedup: %.1fx (sink=%d)%n", jsonNanos / binaryNanos, sink);
+    }
+
+    /**
+     * @return 一次编码加一次解码的耗时(纳秒)，取多轮中的最小值
+     */
+    private static double measure(CacheCodec codec, RedisData redisData) {
+        run(codec, redisData, WARM_UP_ITERATIONS);
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long begin = System.nanoTime();
+            run(codec, redisData, ITERATIONS);
+            best = Math.min(best, (double) (System.nanoTime() - begin) / ITERATIONS);
+        }
+        return best;
+    }
+
+    private static void run(CacheCodec codec, RedisData redisData, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            RedisData decoded = codec.decode(codec.encode(redisData), Shop.class);
+            sink += decoded.getRebuildMillis();
+        }
+    }
+
+    private static Shop shop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
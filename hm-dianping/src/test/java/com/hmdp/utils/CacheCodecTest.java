@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheCodecTest {
+
+    private final CacheCodec json = new JsonCacheCodec();
+    private final CacheCodec binary = new BinaryCacheCodec();
+
+    @Test
+    void binaryRoundTrip() {
+        RedisData redisData = redisData(shop());
+        RedisData decoded = binary.decode(binary.encode(redisData), Shop.class);
+        assertEquals(redisData.getExpireTime(), decoded.getExpireTime());
+        assertEquals(redisData.getRebuildMillis(), decoded.getRebuildMillis());
+        assertEquals(redisData.getData(), decoded.getData());
+    }
+
+    @Test
+    void binaryReadsJsonData() {
+        RedisData redisData = redisData(shop());
+        RedisData decoded = binary.decode(json.encode(redisData), Shop.class);
+        assertEquals(redisData.getData(), decoded.getData());
+    }
+
+    @Test
+    void binaryRejectsOtherSchema() {
+        assertNull(binary.decode(binary.encode(redisData(shop())), UserDTO.class));
+    }
+
+    @Test
+    void jsonTreatsBinaryDataAsMiss() {
+        assertNull(json.decode(binary.encode(redisData(shop())), Shop.class));
+    }
+
+    @Test
+    void jsonTreatsGarbageAsMiss() {
+        assertNull(json.decode(new byte[]{1, 2, 3, '{'}, Shop.class));
+    }
+
+    @Test
+    void binaryTreatsTruncatedDataAsMiss() {
+        byte[] bytes = binary.encode(redisData(shop()));
+        for (int length = 1; length < bytes.length; length++) {
+            assertNull(binary.decode(Arrays.copyOf(bytes, length), Shop.class), "length " + length);
+        }
+    }
+
+    @Test
+    void binaryTreatsCorruptLengthAsMiss() {
+        byte[] bytes = binary.encode(redisData(shop()));
+        // 把头部之后的字节改成0xFF，变长整数解出负数或超长的长度
+        Arrays.fill(bytes, 6, bytes.length, (byte) 0xFF);
+        assertNull(binary.decode(bytes, Shop.class));
+    }
+
+    @Test
+    void binaryIsSmallerThanJson() {
+        RedisData redisData = redisData(shop());
+        assertTrue(binary.encode(redisData).length < json.encode(redisData).length);
+    }
+
+    private static RedisData redisData(Object data) {
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setExpireTime(LocalDateTime.of(2022, 1, 1, 12, 30, 15));
+        redisData.setRebuildMillis(12L);
+        return redisData;
+    }
+
+    private static Shop shop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
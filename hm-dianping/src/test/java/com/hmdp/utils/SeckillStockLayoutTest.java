@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.SeckillVoucherSegment;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeckillStockLayoutTest {
+
+    private static SeckillVoucher voucher() {
+        return new SeckillVoucher()
+                .setVoucherId(1L)
+                .setStock(10)
+                .setBeginTime(LocalDateTime.of(2022, 1, 1, 0, 0))
+                .setEndTime(LocalDateTime.of(2022, 1, 2, 0, 0));
+    }
+
+    private static SeckillVoucherSegment segment(int no, int stock) {
+        return new SeckillVoucherSegment().setVoucherId(1L).setSegmentNo(no).setStock(stock);
+    }
+
+    @Test
+    void segmentedVoucherHasSegmentFieldsOnly() {
+        List<SeckillVoucherSegment> segments = Arrays.asList(segment(0, 4), segment(1, 3), segment(2, 3));
+        Map<String, String> stock = SeckillStockLayout.stockFields(voucher(), segments);
+        Map<String, String> meta = SeckillStockLayout.metaFields(voucher(), segments.size());
+
+        assertEquals(3, stock.size());
+        assertEquals("4", stock.get("stock:0"));
+        assertEquals("3", stock.get("stock:1"));
+        assertEquals("3", stock.get("stock:2"));
+        assertFalse(stock.containsKey("stock"));
+        assertEquals("3", meta.get("segments"));
+        assertTrue(meta.containsKey("begin"));
+        assertTrue(meta.containsKey("end"));
+        assertFalse(meta.containsKey("stock"));
+    }
+
+    @Test
+    void plainVoucherHasStockField() {
+        Map<String, String> stock = SeckillStockLayout.stockFields(voucher(), Collections.emptyList());
+        Map<String, String> meta = SeckillStockLayout.metaFields(voucher(), 0);
+
+        assertEquals(Collections.singletonMap("stock", "10"), stock);
+        assertFalse(meta.containsKey("segments"));
+        assertTrue(Long.parseLong(meta.get("begin")) < Long.parseLong(meta.get("end")));
+    }
+}